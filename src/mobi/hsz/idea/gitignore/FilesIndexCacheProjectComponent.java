@@ -26,9 +26,13 @@ package mobi.hsz.idea.gitignore;
 
 import com.intellij.openapi.components.AbstractProjectComponent;
 import com.intellij.openapi.components.ProjectComponent;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.text.StringUtil;
-import com.intellij.openapi.vfs.*;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileWithId;
+import com.intellij.openapi.vfs.newvfs.persistent.PersistentFS;
 import com.intellij.psi.search.FilenameIndex;
 import com.intellij.psi.search.GlobalSearchScope;
 import com.intellij.util.Processor;
@@ -36,17 +40,30 @@ import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.indexing.FileBasedIndex;
 import com.intellij.util.indexing.IdFilter;
 import gnu.trove.THashSet;
+import gnu.trove.TIntArrayList;
+import mobi.hsz.idea.gitignore.settings.IgnoreSettings;
+import mobi.hsz.idea.gitignore.util.FileIdSetCache;
+import mobi.hsz.idea.gitignore.util.FilesChangesDispatcher;
 import mobi.hsz.idea.gitignore.util.MatcherUtil;
+import mobi.hsz.idea.gitignore.util.PartsIndex;
+import mobi.hsz.idea.gitignore.util.TrigramIndex;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Pattern;
 
 /**
  * Cache {@link ProjectComponent} that retrieves matching files using given {@link Pattern}.
- * It uses {@link VirtualFileListener} to handle changes in the files tree and clear cached entries for the specific
+ * It uses {@link FilesChangesDispatcher} to handle changes in the files tree and clear cached entries for the specific
  * pattern parts.
  *
  * @author Jakub Chrzanowski <jakub@hsz.mobi>
@@ -55,51 +72,100 @@ import java.util.regex.Pattern;
 public class FilesIndexCacheProjectComponent extends AbstractProjectComponent {
     private static final String SEPARATOR = "$";
 
-    private final ConcurrentMap<String, Collection<VirtualFile>> cacheMap;
-    private final VirtualFileManager virtualFileManager;
-    private final VirtualFileListener virtualFileListener = new VirtualFileAdapter() {
-        @Override
-        public void propertyChanged(@NotNull VirtualFilePropertyEvent event) {
-            if (event.getPropertyName().equals("name")) {
-                removeAffectedCaches(event);
-            }
-        }
+    /** Amount of bytes in the megabyte of the {@link IgnoreSettings#getFilesCacheSize()} budget. */
+    private static final long MEGABYTE = 1024 * 1024;
 
-        @Override
-        public void fileCreated(@NotNull VirtualFileEvent event) {
-            removeAffectedCaches(event);
-        }
+    /** Matched files ids keyed by the pattern parts, bounded by the {@link IgnoreSettings#getFilesCacheSize()}. */
+    private final FileIdSetCache cacheMap;
 
-        @Override
-        public void fileDeleted(@NotNull VirtualFileEvent event) {
-            removeAffectedCaches(event);
-        }
+    /** Interval of the progress checks while waiting for the computation started by another caller, in ms. */
+    private static final int WAIT_INTERVAL = 20;
+
+    /** Computations in progress keyed by the pattern parts, concurrent callers wait for the running one. */
+    private final ConcurrentMap<String, Computation<Collection<VirtualFile>>> computations =
+            ContainerUtil.newConcurrentMap();
 
+    /** Inverted index from the pattern parts to the {@link #cacheMap} keys. */
+    private final PartsIndex keysIndex = new PartsIndex();
+
+    /** Amount of the processed paths affected by the VFS changes. */
+    private final AtomicLong processedEvents = new AtomicLong();
+
+    /** Amount of the {@link #cacheMap} keys invalidated by the VFS changes. */
+    private final AtomicLong invalidatedKeys = new AtomicLong();
+
+    /** Trigram index of the project file names, built with the first lookup. */
+    private volatile TrigramIndex namesIndex;
+
+    /** Build of the {@link #namesIndex} in progress, concurrent callers wait for the running one. */
+    private final AtomicReference<Computation<TrigramIndex>> namesComputation =
+            new AtomicReference<Computation<TrigramIndex>>();
+
+    /** Incremented whenever the {@link #namesIndex} is dropped, so the build started before is not published. */
+    private final AtomicInteger namesVersion = new AtomicInteger();
+
+    private final FilesChangesDispatcher filesChangesDispatcher;
+    private final FilesChangesDispatcher.Listener filesChangesListener = new FilesChangesDispatcher.Listener() {
         @Override
-        public void fileMoved(@NotNull VirtualFileMoveEvent event) {
-            removeAffectedCaches(event);
+        public void beforeChange(@NotNull FilesChangesDispatcher.Changes changes) {
+            removeAffectedCaches(changes.getPaths());
         }
 
         @Override
-        public void fileCopied(@NotNull VirtualFileCopyEvent event) {
-            removeAffectedCaches(event);
+        public void afterChange(@NotNull FilesChangesDispatcher.Changes changes) {
+            removeAffectedCaches(changes.getPaths());
+            updateNamesIndex(changes.getFiles());
         }
 
-        @Override
-        public void beforeFileMovement(@NotNull VirtualFileMoveEvent event) {
-            removeAffectedCaches(event);
+        /**
+         * Adds names of the created, copied, moved or renamed files to the {@link #namesIndex}. Children of the new
+         * directories are not reported separately, so the index is dropped and built again with the next lookup.
+         *
+         * @param files affected files
+         */
+        private void updateNamesIndex(@NotNull List<VirtualFile> files) {
+            final TrigramIndex index = namesIndex;
+            if (index == null) {
+                return;
+            }
+            for (VirtualFile file : files) {
+                if (file.isDirectory()) {
+                    dropNamesIndex();
+                    return;
+                }
+                index.add(file.getName());
+            }
         }
 
-        private void removeAffectedCaches(@NotNull VirtualFileEvent event) {
-            for (String key : cacheMap.keySet()) {
-                List<String> parts = StringUtil.split(key, SEPARATOR);
-                if (MatcherUtil.matchAnyPart(parts.toArray(new String[parts.size()]), event.getFile().getPath())) {
-                    cacheMap.remove(key);
+        /**
+         * Removes cached entries which parts match any of the paths affected by the VFS changes batch. Keys are
+         * looked up in the {@link #keysIndex} by the parts occurring in the path.
+         *
+         * @param paths affected paths
+         */
+        private void removeAffectedCaches(@NotNull List<String> paths) {
+            for (String path : paths) {
+                processedEvents.incrementAndGet();
+                for (String key : keysIndex.findKeys(path)) {
+                    keysIndex.remove(key);
+                    if (cacheMap.remove(key)) {
+                        invalidatedKeys.incrementAndGet();
+                    }
                 }
             }
         }
     };
 
+    /** Applies changed memory budget of the {@link #cacheMap}. */
+    private final IgnoreSettings.Listener settingsListener = new IgnoreSettings.Listener() {
+        @Override
+        public void onChange(@NotNull IgnoreSettings.KEY key, Object value) {
+            if (key == IgnoreSettings.KEY.FILES_CACHE_SIZE) {
+                removeKeys(cacheMap.setBudget((Integer) value * MEGABYTE));
+            }
+        }
+    };
+
     /**
      * Returns {@link FilesIndexCacheProjectComponent} service instance.
      *
@@ -111,35 +177,41 @@ public class FilesIndexCacheProjectComponent extends AbstractProjectComponent {
     }
 
     /**
-     * Initializes {@link #cacheMap} and {@link VirtualFileManager}.
+     * Initializes {@link #cacheMap} with the configured memory budget and {@link FilesChangesDispatcher}.
      *
      * @param project current project
      */
     protected FilesIndexCacheProjectComponent(@NotNull final Project project) {
         super(project);
-        cacheMap = ContainerUtil.newConcurrentMap();
-        virtualFileManager = VirtualFileManager.getInstance();
+        cacheMap = new FileIdSetCache(IgnoreSettings.getInstance().getFilesCacheSize() * MEGABYTE);
+        filesChangesDispatcher = FilesChangesDispatcher.getInstance();
     }
 
-    /** Registers {@link #virtualFileListener} when project is opened. */
+    /** Registers {@link #filesChangesListener} and {@link #settingsListener} when project is opened. */
     @Override
     public void projectOpened() {
-        virtualFileManager.addVirtualFileListener(virtualFileListener);
+        filesChangesDispatcher.addListener(filesChangesListener);
+        IgnoreSettings.getInstance().addListener(settingsListener);
     }
 
-    /** Unregisters {@link #virtualFileListener} when project is closed. */
+    /** Unregisters {@link #filesChangesListener} and {@link #settingsListener} when project is closed. */
     @Override
     public void projectClosed() {
-        virtualFileManager.removeVirtualFileListener(virtualFileListener);
-        cacheMap.clear();
+        filesChangesDispatcher.removeListener(filesChangesListener);
+        IgnoreSettings.getInstance().removeListener(settingsListener);
+        clear();
     }
 
     /**
-     * Finds {@link VirtualFile} instances for the specific {@link Pattern} and caches them.
+     * Finds {@link VirtualFile} instances for the specific {@link Pattern} and caches their ids.
+     * Only one computation per pattern runs at once - concurrent callers wait for its result. Computation can be
+     * canceled with the caller's progress indicator, in such case nothing is cached and waiting callers start
+     * the computation again.
      *
      * @param project current project
      * @param pattern to handle
      * @return matched files list
+     * @throws ProcessCanceledException if the caller's progress indicator is canceled
      */
     @NotNull
     public Collection<VirtualFile> getFilesForPattern(@NotNull final Project project, @NotNull Pattern pattern) {
@@ -148,32 +220,248 @@ public class FilesIndexCacheProjectComponent extends AbstractProjectComponent {
 
         if (parts.length > 0) {
             final String key = StringUtil.join(parts, SEPARATOR);
-            if (cacheMap.get(key) == null) {
-                final THashSet<VirtualFile> files = new THashSet<VirtualFile>(1000);
-                FileBasedIndex.getInstance().processAllKeys(FilenameIndex.NAME, new Processor<String>() {
-                    @Override
-                    public boolean process(String s) {
-                        if (MatcherUtil.matchAnyPart(parts, s)) {
-                            for (VirtualFile file : FilenameIndex.getVirtualFilesByName(project, s, scope)) {
-                                if (file.isValid() && MatcherUtil.matchAllParts(parts, file.getPath())) {
-                                    files.add(file);
-                                }
-                            }
+            while (true) {
+                final int[] ids = cacheMap.get(key);
+                if (ids != null) {
+                    return getFiles(ids);
+                }
+
+                final Computation<Collection<VirtualFile>> computation = new Computation<Collection<VirtualFile>>();
+                final Computation<Collection<VirtualFile>> running = computations.putIfAbsent(key, computation);
+                if (running == null) {
+                    try {
+                        final Collection<VirtualFile> files = findFiles(project, scope, parts);
+                        keysIndex.add(key, parts);
+                        removeKeys(cacheMap.put(key, getIds(files)));
+                        computation.result = files;
+                        return files;
+                    } finally {
+                        computations.remove(key);
+                        computation.done.countDown();
+                    }
+                }
+
+                final Collection<VirtualFile> result = running.await();
+                if (result != null) {
+                    return result;
+                }
+            }
+        }
+
+        return ContainerUtil.newArrayList();
+    }
+
+    /**
+     * Finds {@link VirtualFile} instances which path contains all of the given parts.
+     *
+     * @param project current project
+     * @param scope   search scope
+     * @param parts   pattern parts
+     * @return matched files
+     * @throws ProcessCanceledException if the progress indicator is canceled
+     */
+    @NotNull
+    private Collection<VirtualFile> findFiles(@NotNull Project project, @NotNull GlobalSearchScope scope,
+                                              @NotNull String[] parts) {
+        final THashSet<VirtualFile> files = new THashSet<VirtualFile>();
+        for (String name : getNamesIndex(project, scope).findContaining(parts)) {
+            ProgressManager.checkCanceled();
+            for (VirtualFile file : FilenameIndex.getVirtualFilesByName(project, name, scope)) {
+                if (file.isValid() && MatcherUtil.matchAllParts(parts, file.getPath())) {
+                    files.add(file);
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Returns trigram index of the project file names. Index is built with a single {@link FilenameIndex} keys scan.
+     * Only one build runs at once - concurrent callers wait for its result without blocking the component.
+     *
+     * @param project current project
+     * @param scope   search scope
+     * @return names index
+     * @throws ProcessCanceledException if the caller's progress indicator is canceled
+     */
+    @NotNull
+    private TrigramIndex getNamesIndex(@NotNull Project project, @NotNull GlobalSearchScope scope) {
+        while (true) {
+            final TrigramIndex index = namesIndex;
+            if (index != null) {
+                return index;
+            }
+
+            final Computation<TrigramIndex> computation = new Computation<TrigramIndex>();
+            if (namesComputation.compareAndSet(null, computation)) {
+                try {
+                    final int version = namesVersion.get();
+                    final TrigramIndex result = new TrigramIndex();
+                    FileBasedIndex.getInstance().processAllKeys(FilenameIndex.NAME, new Processor<String>() {
+                        @Override
+                        public boolean process(String s) {
+                            ProgressManager.checkCanceled();
+                            result.add(s);
+                            return true;
                         }
-                        return true;
+                    }, scope, IdFilter.getProjectIdFilter(project, false));
+                    if (namesVersion.get() == version) {
+                        namesIndex = result;
                     }
-                }, scope, IdFilter.getProjectIdFilter(project, false));
-                cacheMap.put(key, files);
+                    computation.result = result;
+                    return result;
+                } finally {
+                    namesComputation.set(null);
+                    computation.done.countDown();
+                }
+            }
+
+            final Computation<TrigramIndex> running = namesComputation.get();
+            if (running != null) {
+                final TrigramIndex result = running.await();
+                if (result != null) {
+                    return result;
+                }
             }
+        }
+    }
+
+    /** Drops the {@link #namesIndex}, it is built again with the next lookup. */
+    private void dropNamesIndex() {
+        namesVersion.incrementAndGet();
+        namesIndex = null;
+    }
 
-            return cacheMap.get(key);
+    /**
+     * Returns sorted ids of the given files.
+     *
+     * @param files files with ids
+     * @return sorted ids
+     */
+    @NotNull
+    private static int[] getIds(@NotNull Collection<VirtualFile> files) {
+        final TIntArrayList ids = new TIntArrayList(files.size());
+        for (VirtualFile file : files) {
+            if (file instanceof VirtualFileWithId) {
+                ids.add(((VirtualFileWithId) file).getId());
+            }
         }
+        final int[] result = ids.toNativeArray();
+        Arrays.sort(result);
+        return result;
+    }
 
-        return ContainerUtil.newArrayList();
+    /**
+     * Returns valid files for the given ids.
+     *
+     * @param ids file ids
+     * @return files list
+     */
+    @NotNull
+    private static List<VirtualFile> getFiles(@NotNull int[] ids) {
+        final List<VirtualFile> files = ContainerUtil.newArrayList();
+        final PersistentFS fs = PersistentFS.getInstance();
+        for (int id : ids) {
+            final VirtualFile file = fs.findFileById(id);
+            if (file != null && file.isValid()) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Removes keys evicted from the {@link #cacheMap} from the {@link #keysIndex}.
+     *
+     * @param keys evicted keys
+     */
+    private void removeKeys(@NotNull List<String> keys) {
+        for (String key : keys) {
+            keysIndex.remove(key);
+        }
+    }
+
+    /**
+     * Returns amount of the cached patterns.
+     *
+     * @return patterns count
+     */
+    public int getCachedPatternsCount() {
+        return cacheMap.size();
+    }
+
+    /**
+     * Returns estimated memory used by the cached patterns.
+     *
+     * @return memory usage, in bytes
+     */
+    public long getMemoryUsage() {
+        return cacheMap.getMemoryUsage();
+    }
+
+    /**
+     * Returns amount of the patterns evicted because of the memory budget.
+     *
+     * @return evictions count
+     */
+    public long getEvictionsCount() {
+        return cacheMap.getEvictionsCount();
+    }
+
+    /**
+     * Returns amount of the paths affected by the VFS changes that were checked against the cached entries.
+     *
+     * @return processed events count
+     */
+    public long getProcessedEventsCount() {
+        return processedEvents.get();
+    }
+
+    /**
+     * Returns amount of the cached entries invalidated by the VFS changes.
+     *
+     * @return invalidated keys count
+     */
+    public long getInvalidatedKeysCount() {
+        return invalidatedKeys.get();
+    }
+
+    /**
+     * Computation shared by the concurrent callers.
+     *
+     * @param <T> result type
+     */
+    private static class Computation<T> {
+        /** Released when the computation is finished or canceled. */
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        /** Computed result, <code>null</code> if the computation was canceled. */
+        private volatile T result;
+
+        /**
+         * Waits for the computation, checking the caller's progress indicator in the meantime.
+         *
+         * @return computed result or <code>null</code> if the computation was canceled
+         * @throws ProcessCanceledException if the caller's progress indicator is canceled
+         */
+        @Nullable
+        private T await() {
+            try {
+                while (!done.await(WAIT_INTERVAL, TimeUnit.MILLISECONDS)) {
+                    ProgressManager.checkCanceled();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ProcessCanceledException();
+            }
+            return result;
+        }
     }
 
-    /** Clears {@link #cacheMap}. */
+    /** Clears {@link #cacheMap}, {@link #keysIndex} and {@link #namesIndex}. */
     public void clear() {
         cacheMap.clear();
+        keysIndex.clear();
+        dropNamesIndex();
     }
 }
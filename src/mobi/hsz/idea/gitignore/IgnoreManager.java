@@ -25,40 +25,60 @@
 package mobi.hsz.idea.gitignore;
 
 import com.intellij.openapi.application.AccessToken;
+import com.intellij.openapi.application.ApplicationAdapter;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.components.AbstractProjectComponent;
+import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.util.ProgressIndicatorBase;
 import com.intellij.openapi.project.DumbService;
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.vcs.FileStatusManager;
+import com.intellij.openapi.startup.StartupManager;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.util.Ref;
+import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vcs.ProjectLevelVcsManager;
 import com.intellij.openapi.vcs.VcsListener;
 import com.intellij.openapi.vfs.*;
 import com.intellij.psi.*;
 import com.intellij.psi.impl.PsiManagerImpl;
-import com.intellij.psi.impl.file.impl.FileManager;
-import com.intellij.psi.impl.file.impl.FileManagerImpl;
-import com.intellij.psi.search.FileTypeIndex;
 import com.intellij.psi.search.GlobalSearchScope;
 import com.intellij.util.Alarm;
 import com.intellij.util.ConcurrencyUtil;
 import com.intellij.util.containers.ContainerUtil;
+import com.intellij.util.indexing.FileBasedIndex;
 import com.intellij.util.io.storage.HeavyProcessLatch;
 import com.intellij.util.messages.MessageBusConnection;
-import mobi.hsz.idea.gitignore.file.type.IgnoreFileType;
+import mobi.hsz.idea.gitignore.indexing.IgnoreRules;
+import mobi.hsz.idea.gitignore.indexing.IgnoreRulesIndex;
 import mobi.hsz.idea.gitignore.lang.IgnoreLanguage;
+import mobi.hsz.idea.gitignore.parser.IgnoreRulesReader;
 import mobi.hsz.idea.gitignore.psi.IgnoreFile;
 import mobi.hsz.idea.gitignore.settings.IgnoreSettings;
 import mobi.hsz.idea.gitignore.util.CacheMap;
+import mobi.hsz.idea.gitignore.util.CompiledRules;
+import mobi.hsz.idea.gitignore.util.FilesChangesDispatcher;
 import mobi.hsz.idea.gitignore.util.RefreshProgress;
+import mobi.hsz.idea.gitignore.util.StatusScheduler;
 import mobi.hsz.idea.gitignore.util.Utils;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static mobi.hsz.idea.gitignore.settings.IgnoreSettings.KEY;
 
@@ -69,104 +89,84 @@ import static mobi.hsz.idea.gitignore.settings.IgnoreSettings.KEY;
  * @since 1.0
  */
 public class IgnoreManager extends AbstractProjectComponent {
-    private static final int REQUEST_DELAY = 200;
     private static final String PROCESS_NAME = "Ignore indexing";
 
     private final CacheMap cache;
+    private final StatusScheduler scheduler;
     private final PsiManagerImpl psiManager;
-    private final VirtualFileManager virtualFileManager;
+    private final FilesChangesDispatcher filesChangesDispatcher;
     private final IgnoreSettings settings;
     private MessageBusConnection messageBus;
-    private boolean working;
+    private volatile boolean working;
     private final ExecutorService queue = ConcurrencyUtil.newSingleThreadExecutor(PROCESS_NAME);
     private final ProgressIndicator refreshIndicator = new RefreshProgress(IgnoreBundle.message("cache.indexing"));
 
-    private final VirtualFileListener virtualFileListener = new VirtualFileAdapter() {
-        private boolean wasIgnoreFileType;
+    /** Indicator of the currently running {@link #retrieve()} process, canceled when the process is restarted. */
+    @Nullable
+    private volatile ProgressIndicator retrieveIndicator;
 
-        /**
-         * Fired when a virtual file is renamed from within IDEA, or its writable status is changed.
-         * For files renamed externally, {@link #fileCreated} and {@link #fileDeleted} events will be fired.
-         *
-         * @param event the event object containing information about the change.
-         */
+    /** Quiet period after the last change of the ignore file, before its rules are refreshed, in milliseconds. */
+    private static final int CHANGES_DELAY = 300;
+
+    /** Ignore files changed since the last rules refresh. */
+    private final Set<IgnoreFile> changedFiles = ContainerUtil.newLinkedHashSet();
+
+    /** Schedules rules refresh of the changed files on the pooled thread. */
+    private final Alarm changesAlarm;
+
+    /** Refreshes rules of the changed files and sends a single notification about the changed statuses. */
+    private final Runnable changesRunnable = new Runnable() {
         @Override
-        public void propertyChanged(@NotNull VirtualFilePropertyEvent event) {
-            if (event.getPropertyName().equals("name")) {
-                boolean isIgnoreFileType = isIgnoreFileType(event);
-                if (isIgnoreFileType && !wasIgnoreFileType) {
-                    addFile(event);
-                } else if (!isIgnoreFileType && wasIgnoreFileType) {
-                    removeFile(event);
-                }
+        public void run() {
+            final List<IgnoreFile> files;
+            synchronized (changedFiles) {
+                files = ContainerUtil.newArrayList(changedFiles);
+                changedFiles.clear();
             }
-        }
 
-        /**
-         * Fired before the change of a name or writable status of a file is processed.
-         *
-         * @param event the event object containing information about the change.
-         */
-        @Override
-        final public void beforePropertyChange(@NotNull VirtualFilePropertyEvent event) {
-            wasIgnoreFileType = isIgnoreFileType(event);
+            for (IgnoreFile file : files) {
+                if (myProject.isDisposed() || !working) {
+                    return;
+                }
+                if (file.isValid()) {
+                    cache.hasChanged(file, false);
+                }
+            }
+            cache.flushNotifications();
         }
+    };
 
+    private final FilesChangesDispatcher.Listener filesChangesListener = new FilesChangesDispatcher.Listener() {
         /**
-         * Fired when a virtual file is created. This event is not fired for files discovered during initial VFS initialization.
+         * Removes ignore files that are going to be deleted, moved or renamed from the {@link CacheMap} and drops
+         * statuses of all of the affected files.
          *
-         * @param event the event object containing information about the change.
+         * @param changes VFS changes batch
          */
         @Override
-        public void fileCreated(@NotNull VirtualFileEvent event) {
-            addFile(event);
-        }
-
-        @Override
-        public void beforeFileDeletion(@NotNull VirtualFileEvent event) {
-            removeFile(event);
+        public void beforeChange(@NotNull FilesChangesDispatcher.Changes changes) {
+            cache.invalidateFiles(changes.getFiles());
+            for (VirtualFile virtualFile : changes.getIgnoreFiles()) {
+                cache.remove(getIgnoreFile(virtualFile));
+            }
         }
 
         /**
-         * Fired when a virtual file is copied from within IDEA.
+         * Adds created, copied, moved or renamed ignore files to the {@link CacheMap} and drops statuses of all of
+         * the affected files.
          *
-         * @param event the event object containing information about the change.
+         * @param changes VFS changes batch
          */
         @Override
-        public void fileCopied(@NotNull VirtualFileCopyEvent event) {
-            addFile(event);
-        }
-
-        /**
-         * Adds {@link IgnoreFile} to the {@link CacheMap}.
-         */
-        private void addFile(VirtualFileEvent event) {
-            if (isIgnoreFileType(event)) {
-                IgnoreFile file = getIgnoreFile(event.getFile());
+        public void afterChange(@NotNull FilesChangesDispatcher.Changes changes) {
+            cache.invalidateFiles(changes.getFiles());
+            for (VirtualFile virtualFile : changes.getIgnoreFiles()) {
+                final IgnoreFile file = getIgnoreFile(virtualFile);
                 if (file != null) {
                     cache.add(file);
                 }
             }
         }
-
-        /**
-         * Removes {@link IgnoreFile} from the {@link CacheMap}.
-         */
-        private void removeFile(VirtualFileEvent event) {
-            if (isIgnoreFileType(event)) {
-                cache.remove(getIgnoreFile(event.getFile()));
-            }
-        }
-
-        /**
-         * Checks if event was fired on the {@link IgnoreFileType} file.
-         *
-         * @param event current event
-         * @return event called on {@link IgnoreFileType}
-         */
-        private boolean isIgnoreFileType(VirtualFileEvent event) {
-            return event.getFile().getFileType() instanceof IgnoreFileType;
-        }
     };
 
     private final PsiTreeChangeListener psiTreeChangeListener = new PsiTreeChangeAdapter() {
@@ -175,7 +175,11 @@ public class IgnoreManager extends AbstractProjectComponent {
             if (event.getParent() instanceof IgnoreFile) {
                 IgnoreFile ignoreFile = (IgnoreFile) event.getParent();
                 if (((IgnoreLanguage) ignoreFile.getLanguage()).isEnabled()) {
-                    cache.hasChanged(ignoreFile);
+                    synchronized (changedFiles) {
+                        changedFiles.add(ignoreFile);
+                    }
+                    changesAlarm.cancelAllRequests();
+                    changesAlarm.addRequest(changesRunnable, CHANGES_DELAY);
                 }
             }
         }
@@ -194,8 +198,7 @@ public class IgnoreManager extends AbstractProjectComponent {
                 case LANGUAGES:
                     if (isEnabled()) {
                         if (working) {
-                            cache.clear();
-                            retrieve();
+                            restart();
                         } else {
                             enable();
                         }
@@ -212,8 +215,7 @@ public class IgnoreManager extends AbstractProjectComponent {
         @Override
         public void directoryMappingChanged() {
             if (working && initialized) {
-                cache.clear();
-                retrieve();
+                restart();
             }
             initialized = true;
         }
@@ -237,9 +239,11 @@ public class IgnoreManager extends AbstractProjectComponent {
     public IgnoreManager(@NotNull final Project project) {
         super(project);
         cache = new CacheMap(project);
+        scheduler = new StatusScheduler(project, cache);
         psiManager = (PsiManagerImpl) PsiManager.getInstance(project);
-        virtualFileManager = VirtualFileManager.getInstance();
+        filesChangesDispatcher = FilesChangesDispatcher.getInstance();
         settings = IgnoreSettings.getInstance();
+        changesAlarm = new Alarm(Alarm.ThreadToUse.POOLED_THREAD, project);
     }
 
     /**
@@ -270,6 +274,46 @@ public class IgnoreManager extends AbstractProjectComponent {
         return isEnabled() && cache.isFileIgnored(file);
     }
 
+    /**
+     * Checks which children of the given directory are ignored.
+     *
+     * @param directory parent directory
+     * @return ignored flags of the children
+     */
+    @NotNull
+    public Map<VirtualFile, Boolean> getIgnoredStatuses(@NotNull final VirtualFile directory) {
+        return getIgnoredStatuses(Arrays.asList(directory.getChildren()));
+    }
+
+    /**
+     * Checks which of the given files are ignored. Files placed in the same directory are checked together,
+     * so the directory context is resolved only once.
+     *
+     * @param files files to check
+     * @return ignored flags of the files
+     */
+    @NotNull
+    public Map<VirtualFile, Boolean> getIgnoredStatuses(@NotNull final Collection<VirtualFile> files) {
+        if (!isEnabled()) {
+            final Map<VirtualFile, Boolean> result = ContainerUtil.newHashMap();
+            for (VirtualFile file : files) {
+                result.put(file, false);
+            }
+            return result;
+        }
+        return cache.getIgnoredStatuses(files);
+    }
+
+    /**
+     * Checks if ignored status of the file is already computed.
+     *
+     * @param file current file
+     * @return status is computed
+     */
+    public boolean isStatusCached(@NotNull final VirtualFile file) {
+        return !isEnabled() || cache.isCached(file);
+    }
+
     /**
      * Checks if file's parents are ignored.
      *
@@ -320,7 +364,7 @@ public class IgnoreManager extends AbstractProjectComponent {
             return;
         }
 
-        virtualFileManager.addVirtualFileListener(virtualFileListener);
+        filesChangesDispatcher.addListener(filesChangesListener);
         psiManager.addPsiTreeChangeListener(psiTreeChangeListener);
         settings.addListener(settingsListener);
         messageBus = myProject.getMessageBus().connect();
@@ -338,13 +382,19 @@ public class IgnoreManager extends AbstractProjectComponent {
     @Override
     public void projectClosed() {
         disable();
+        cache.dispose();
     }
 
     /**
      * Disable manager.
      */
     private void disable() {
-        virtualFileManager.removeVirtualFileListener(virtualFileListener);
+        cancelRetrieve();
+        changesAlarm.cancelAllRequests();
+        synchronized (changedFiles) {
+            changedFiles.clear();
+        }
+        filesChangesDispatcher.removeListener(filesChangesListener);
         psiManager.removePsiTreeChangeListener(psiTreeChangeListener);
         settings.removeListener(settingsListener);
 
@@ -353,6 +403,7 @@ public class IgnoreManager extends AbstractProjectComponent {
         }
 
         cache.clear();
+        cache.flushNotifications();
         working = false;
     }
 
@@ -377,49 +428,120 @@ public class IgnoreManager extends AbstractProjectComponent {
             return;
         }
 
-        DumbService.getInstance(myProject).smartInvokeLater(new Runnable() {
+        cancelRetrieve();
+        final ProgressIndicator indicator = new ProgressIndicatorBase();
+        retrieveIndicator = indicator;
+
+        StartupManager.getInstance(myProject).runWhenProjectIsInitialized(new Runnable() {
+            @Override
+            public void run() {
+                whenReady(indicator);
+            }
+        });
+    }
+
+    /**
+     * Reloads all of the rules. Currently running {@link #retrieve()} process is canceled first and the cache is
+     * cleared on the processing queue, once the canceled process has finished, so it cannot publish outdated rules
+     * into the cleared cache.
+     */
+    private void restart() {
+        cancelRetrieve();
+        queue.submit(new Runnable() {
+            @Override
+            public void run() {
+                cache.clear();
+            }
+        });
+        retrieve();
+    }
+
+    /**
+     * Cancels currently running {@link #retrieve()} process.
+     */
+    private void cancelRetrieve() {
+        final ProgressIndicator indicator = retrieveIndicator;
+        if (indicator != null) {
+            indicator.cancel();
+        }
+        retrieveIndicator = null;
+    }
+
+    /**
+     * Schedules loading of the ignore files once the indexes are ready. Called when the project is initialized.
+     * When the rules are loaded, statuses of the visible files are computed first by the {@link StatusScheduler}.
+     *
+     * @param indicator indicator of the current process
+     */
+    private void whenReady(@NotNull final ProgressIndicator indicator) {
+        DumbService.getInstance(myProject).runWhenSmart(new Runnable() {
             @Override
             public void run() {
+                if (indicator.isCanceled() || myProject.isDisposed()) {
+                    return;
+                }
+
                 queue.submit(new Runnable() {
                     @Override
                     public void run() {
+                        if (indicator.isCanceled()) {
+                            return;
+                        }
+                        try {
+                            ProgressManager.getInstance().runProcess(new Runnable() {
+                                @Override
+                                public void run() {
+                                    load();
+                                    scheduler.run(indicator);
+                                }
+                            }, indicator);
+                        } catch (ProcessCanceledException ignored) {
+                        }
+                    }
+
+                    /**
+                     * Loads project and outer ignore files. Process is aborted as soon as the indicator is canceled.
+                     */
+                    private void load() {
                         try {
                             refreshIndicator.start();
                             AccessToken token = HeavyProcessLatch.INSTANCE.processStarted(PROCESS_NAME);
                             try {
-                                FileManager fileManager = psiManager.getFileManager();
-                                if (!(fileManager instanceof FileManagerImpl)) {
-                                    return;
-                                }
-
-                                while (!((FileManagerImpl) psiManager.getFileManager()).isInitialized()) {
-                                    try {
-                                        Thread.sleep(REQUEST_DELAY);
-                                    } catch (InterruptedException ignored) {
-                                    }
-                                }
-                                // Search for Ignore files in the project
+                                // Load rules of the Ignore files in the project from the index
                                 final GlobalSearchScope scope = GlobalSearchScope.allScope(myProject);
-                                final List<IgnoreFile> files = ContainerUtil.newArrayList();
+                                final Map<VirtualFile, IgnoreRules> rules = ContainerUtil.newHashMap();
                                 AccessToken readAccessToken = ApplicationManager.getApplication().acquireReadActionLock();
                                 try {
                                     for (final IgnoreLanguage language : IgnoreBundle.LANGUAGES) {
                                         if (language.isEnabled()) {
-                                            try {
-                                                Collection<VirtualFile> virtualFiles = FileTypeIndex.getFiles(language.getFileType(), scope);
-                                                for (VirtualFile virtualFile : virtualFiles) {
-                                                    ContainerUtil.addIfNotNull(getIgnoreFile(virtualFile), files);
-                                                }
-                                            } catch (IndexOutOfBoundsException ignored) {
-                                            }
+                                            FileBasedIndex.getInstance().processValues(IgnoreRulesIndex.KEY,
+                                                    language.getID(), null,
+                                                    new FileBasedIndex.ValueProcessor<IgnoreRules>() {
+                                                        @Override
+                                                        public boolean process(VirtualFile file, IgnoreRules value) {
+                                                            rules.put(file, value);
+                                                            return true;
+                                                        }
+                                                    }, scope);
                                         }
                                     }
                                 } finally {
                                     readAccessToken.finish();
                                 }
-                                Utils.ignoreFilesSort(files);
+                                // source rules are known before the rules are compiled, so the statuses stored in
+                                // the previous session can be served right away
+                                cache.setSourceRules(rules, readOuterRules());
+
+                                final List<VirtualFile> files = ContainerUtil.newArrayList(rules.keySet());
+                                ContainerUtil.sort(files, new Comparator<VirtualFile>() {
+                                    @Override
+                                    public int compare(VirtualFile file1, VirtualFile file2) {
+                                        return StringUtil.naturalCompare(file1.getPath(), file2.getPath());
+                                    }
+                                });
 
-                                addTasksFor(files);
+                                loadFiles(files, rules);
+                                indicator.checkCanceled();
 
                                 // Search for outer files
                                 if (settings.isOuterIgnoreRules()) {
@@ -444,70 +566,200 @@ public class IgnoreManager extends AbstractProjectComponent {
                                         readAccessToken.finish();
                                     }
                                 }
+
+                                indicator.checkCanceled();
+                                cache.finishLoading();
                             } finally {
                                 token.finish();
                                 refreshIndicator.stop();
                             }
                         } finally {
-                            DumbService.getInstance(myProject).runWhenSmart(new Runnable() {
-                                @Override
-                                public void run() {
-                                    FileStatusManager.getInstance(myProject).fileStatusesChanged();
-                                }
-                            });
+                            if (!indicator.isCanceled()) {
+                                DumbService.getInstance(myProject).runWhenSmart(new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        cache.flushNotifications();
+                                    }
+                                });
+                            }
                         }
                     }
 
                     /**
-                     * Adds {@link IgnoreFile} to the cache processor queue.
+                     * Reads source rules of the outer ignore files, the same way as the project ignore files are
+                     * indexed.
                      *
-                     * @param files to cache
+                     * @return source rules keyed by the outer ignore files
                      */
-                    private void addTasksFor(@NotNull final List<IgnoreFile> files) {
-                        if (files.isEmpty()) {
-                            return;
+                    @NotNull
+                    private Map<VirtualFile, IgnoreRules> readOuterRules() {
+                        final Map<VirtualFile, IgnoreRules> result = ContainerUtil.newHashMap();
+                        if (!settings.isOuterIgnoreRules()) {
+                            return result;
+                        }
+
+                        final AccessToken readAccessToken = ApplicationManager.getApplication().acquireReadActionLock();
+                        try {
+                            for (IgnoreLanguage language : IgnoreBundle.LANGUAGES) {
+                                if (!language.isEnabled()) {
+                                    continue;
+                                }
+                                final VirtualFile outerFile = language.getOuterFile(myProject);
+                                if (outerFile != null && outerFile.exists()) {
+                                    final IgnoreRules outerRules = new IgnoreRules();
+                                    try {
+                                        new IgnoreRulesReader(language.getDefaultSyntax(), language.isSyntaxSupported())
+                                                .read(outerFile, outerRules);
+                                        result.put(outerFile, outerRules);
+                                    } catch (IOException ignored) {
+                                    }
+                                }
+                            }
+                        } finally {
+                            readAccessToken.finish();
                         }
-                        addTaskFor(files.remove(0), files);
+                        return result;
                     }
 
                     /**
-                     * Adds {@link IgnoreFile} to the cache processor queue.
+                     * Loads project ignore files in parallel. Rules loaded from the index are compiled on the pooled
+                     * threads. Rules are published in the given order as soon as they are ready, so files ignored by
+                     * the already published rules can be skipped. Workers run under the process indicator and their
+                     * read actions give way to the write actions: running units are canceled before the write action
+                     * starts and repeated once it is done.
                      *
-                     * @param file to cache
+                     * @param files to cache, sorted by path
+                     * @param rules indexed rules of the files
                      */
-                    private void addTaskFor(@Nullable final IgnoreFile file) {
-                        addTaskFor(file, null);
+                    private void loadFiles(@NotNull final List<VirtualFile> files,
+                                           @NotNull final Map<VirtualFile, IgnoreRules> rules) {
+                        if (files.isEmpty() || myProject.getBaseDir() == null) {
+                            return;
+                        }
+
+                        final List<ProgressIndicator> running = ContainerUtil.createLockFreeCopyOnWriteList();
+                        final ApplicationAdapter writeListener = new ApplicationAdapter() {
+                            @Override
+                            public void beforeWriteActionStart(Object action) {
+                                for (ProgressIndicator unit : running) {
+                                    unit.cancel();
+                                }
+                            }
+                        };
+
+                        final List<FutureTask<Pair<IgnoreFile, CompiledRules>>> tasks =
+                                ContainerUtil.newArrayList();
+                        for (final VirtualFile virtualFile : files) {
+                            tasks.add(new FutureTask<Pair<IgnoreFile, CompiledRules>>(
+                                    new Callable<Pair<IgnoreFile, CompiledRules>>() {
+                                        @Override
+                                        public Pair<IgnoreFile, CompiledRules> call() {
+                                            final Ref<IgnoreFile> file = Ref.create();
+                                            while (true) {
+                                                indicator.checkCanceled();
+                                                final ProgressIndicator unit = new ProgressIndicatorBase();
+                                                running.add(unit);
+                                                try {
+                                                    ProgressManager.getInstance().runProcess(new Runnable() {
+                                                        @Override
+                                                        public void run() {
+                                                            file.set(ApplicationManager.getApplication().runReadAction(
+                                                                    new Computable<IgnoreFile>() {
+                                                                        @Override
+                                                                        public IgnoreFile compute() {
+                                                                            ProgressManager.checkCanceled();
+                                                                            return getIgnoreFile(virtualFile);
+                                                                        }
+                                                                    }
+                                                            ));
+                                                        }
+                                                    }, unit);
+                                                    break;
+                                                } catch (ProcessCanceledException e) {
+                                                    // unit gave way to the write action - next read action waits
+                                                    // for it to finish
+                                                } finally {
+                                                    running.remove(unit);
+                                                }
+                                            }
+                                            indicator.checkCanceled();
+                                            return file.isNull() ? null
+                                                    : Pair.create(file.get(), cache.prepare(rules.get(virtualFile)));
+                                        }
+                                    }
+                            ));
+                        }
+
+                        ApplicationManager.getApplication().addApplicationListener(writeListener);
+                        try {
+                            final AtomicInteger next = new AtomicInteger();
+                            final int workers = Math.min(tasks.size(),
+                                    Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+                            for (int i = 0; i < workers; i++) {
+                                ApplicationManager.getApplication().executeOnPooledThread(new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        try {
+                                            ProgressManager.getInstance().runProcess(new Runnable() {
+                                                @Override
+                                                public void run() {
+                                                    int index;
+                                                    while (!myProject.isDisposed()
+                                                            && (index = next.getAndIncrement()) < tasks.size()) {
+                                                        indicator.checkCanceled();
+                                                        tasks.get(index).run();
+                                                    }
+                                                }
+                                            }, indicator);
+                                        } catch (ProcessCanceledException ignored) {
+                                        }
+                                    }
+                                });
+                            }
+
+                            for (int i = 0; i < tasks.size() && !myProject.isDisposed(); i++) {
+                                indicator.checkCanceled();
+                                final FutureTask<Pair<IgnoreFile, CompiledRules>> task = tasks.get(i);
+                                // runs the task in the current thread if none of the workers picked it yet
+                                task.run();
+
+                                final Pair<IgnoreFile, CompiledRules> prepared;
+                                try {
+                                    prepared = task.get();
+                                } catch (InterruptedException e) {
+                                    Thread.currentThread().interrupt();
+                                    return;
+                                } catch (ExecutionException e) {
+                                    continue;
+                                }
+
+                                final VirtualFile virtualFile = files.get(i);
+                                if (prepared == null || isFileIgnored(virtualFile)
+                                        || (i > 0 && isParentIgnored(virtualFile))) {
+                                    continue;
+                                }
+                                cache.publish(prepared.getFirst(), prepared.getSecond(), false);
+                            }
+                        } finally {
+                            ApplicationManager.getApplication().removeApplicationListener(writeListener);
+                        }
                     }
 
                     /**
-                     * Adds {@link IgnoreFile} to the cache processor queue.
+                     * Adds {@link IgnoreFile} to the cache.
                      *
                      * @param file to cache
-                     * @param dependentFiles files to cache if not ignored by given file
                      */
-                    private void addTaskFor(@Nullable final IgnoreFile file, @Nullable final List<IgnoreFile> dependentFiles) {
-                        if (file == null) {
-                            return;
-                        }
-                        final VirtualFile virtualFile = file.getVirtualFile();
-                        VirtualFile projectDir = myProject.getBaseDir();
-
-                        if ((!file.isOuter() && (virtualFile == null || isFileIgnored(virtualFile))) || projectDir == null) {
+                    private void addTaskFor(@Nullable final IgnoreFile file) {
+                        if (file == null || myProject.getBaseDir() == null) {
                             return;
-                        } else {
-                            cache.add(file);
                         }
 
-                        if (dependentFiles == null || dependentFiles.isEmpty()) {
+                        final VirtualFile virtualFile = file.getVirtualFile();
+                        if (!file.isOuter() && (virtualFile == null || isFileIgnored(virtualFile))) {
                             return;
                         }
-
-                        for (IgnoreFile dependentFile : dependentFiles) {
-                            VirtualFile dependentVirtualFile = dependentFile.getVirtualFile();
-                            if (dependentVirtualFile != null && !isFileIgnored(dependentVirtualFile) && !isParentIgnored(dependentVirtualFile)) {
-                                addTaskFor(dependentFile);
-                            }
-                        }
+                        cache.add(file);
                     }
                 });
             }
@@ -30,24 +30,30 @@ import com.intellij.codeInspection.ProblemDescriptor;
 import com.intellij.codeInspection.ProblemsHolder;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Pair;
-import com.intellij.openapi.vfs.*;
+import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileVisitor;
 import com.intellij.psi.PsiFile;
+import com.intellij.util.ArrayUtil;
 import com.intellij.util.containers.ContainerUtil;
+import gnu.trove.TIntArrayList;
 import mobi.hsz.idea.gitignore.IgnoreBundle;
 import mobi.hsz.idea.gitignore.psi.IgnoreEntry;
 import mobi.hsz.idea.gitignore.psi.IgnoreFile;
 import mobi.hsz.idea.gitignore.psi.IgnoreVisitor;
+import mobi.hsz.idea.gitignore.util.CompressedBitmap;
+import mobi.hsz.idea.gitignore.util.FilesChangesDispatcher;
 import mobi.hsz.idea.gitignore.util.Glob;
+import mobi.hsz.idea.gitignore.util.GlobMatcher;
 import mobi.hsz.idea.gitignore.util.Utils;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.Collection;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
 
 /**
@@ -59,58 +65,43 @@ import java.util.concurrent.ConcurrentMap;
 public class IgnoreCoverEntryInspection extends LocalInspectionTool {
     private static final String SEPARATOR = "$";
 
-    private final ConcurrentMap<String, Set<String>> cacheMap;
-    private final VirtualFileManager virtualFileManager;
+    /** Matched paths cache, replaced with a new instance when the files tree changes. */
+    @NotNull
+    private volatile PathsCache pathsCache = new PathsCache();
 
-    /** Watches for the changes in the files tree and triggers the cache clear. */
-    private final VirtualFileListener virtualFileListener = new VirtualFileAdapter() {
-        @Override
-        public void propertyChanged(@NotNull VirtualFilePropertyEvent event) {
-            if (event.getPropertyName().equals("name")) {
-                cacheMap.clear();
-            }
-        }
-
-        @Override
-        public void fileCreated(@NotNull VirtualFileEvent event) {
-            cacheMap.clear();
-        }
+    private final FilesChangesDispatcher filesChangesDispatcher;
 
+    /** Watches for the changes in the files tree and triggers the cache clear once per VFS changes batch. */
+    private final FilesChangesDispatcher.Listener filesChangesListener = new FilesChangesDispatcher.Listener() {
         @Override
-        public void fileDeleted(@NotNull VirtualFileEvent event) {
-            cacheMap.clear();
+        public void beforeChange(@NotNull FilesChangesDispatcher.Changes changes) {
+            pathsCache = new PathsCache();
         }
 
         @Override
-        public void fileMoved(@NotNull VirtualFileMoveEvent event) {
-            cacheMap.clear();
-        }
-
-        @Override
-        public void fileCopied(@NotNull VirtualFileCopyEvent event) {
-            cacheMap.clear();
+        public void afterChange(@NotNull FilesChangesDispatcher.Changes changes) {
+            pathsCache = new PathsCache();
         }
     };
 
     /**
      * Builds a new instance of {@link IgnoreCoverEntryInspection}.
-     * Initializes {@link VirtualFileManager} and listens for the changes in the files tree.
+     * Initializes {@link FilesChangesDispatcher} and listens for the changes in the files tree.
      */
     public IgnoreCoverEntryInspection() {
-        cacheMap = ContainerUtil.newConcurrentMap();
-        virtualFileManager = VirtualFileManager.getInstance();
-        virtualFileManager.addVirtualFileListener(virtualFileListener);
+        filesChangesDispatcher = FilesChangesDispatcher.getInstance();
+        filesChangesDispatcher.addListener(filesChangesListener);
     }
 
     /**
-     * Unregisters {@link #virtualFileListener} and clears the paths cache.
+     * Unregisters {@link #filesChangesListener} and clears the paths cache.
      *
      * @param project current project
      */
     @Override
     public void cleanup(@NotNull Project project) {
-        virtualFileManager.removeVirtualFileListener(virtualFileListener);
-        cacheMap.clear();
+        filesChangesDispatcher.removeListener(filesChangesListener);
+        pathsCache = new PathsCache();
     }
 
     /**
@@ -134,48 +125,49 @@ public class IgnoreCoverEntryInspection extends LocalInspectionTool {
             return null;
         }
 
-        final Set<String> ignored = ContainerUtil.newHashSet();
-        final Set<String> unignored = ContainerUtil.newHashSet();
+        final PathsCache cache = pathsCache;
+        final CompressedBitmap[] ignored = {CompressedBitmap.EMPTY};
+        final CompressedBitmap[] unignored = {CompressedBitmap.EMPTY};
 
         final ProblemsHolder problemsHolder = new ProblemsHolder(manager, file, isOnTheFly);
         final List<Pair<IgnoreEntry, IgnoreEntry>> entries = ContainerUtil.newArrayList();
-        final Map<IgnoreEntry, Set<String>> map = ContainerUtil.newHashMap();
+        final Map<IgnoreEntry, CompressedBitmap> map = ContainerUtil.newHashMap();
 
         file.acceptChildren(new IgnoreVisitor() {
             @Override
             public void visitEntry(@NotNull IgnoreEntry entry) {
-                Set<String> matched = getPathsSet(contextDirectory, entry);
-                Collection<String> intersection;
-                boolean modified;
+                CompressedBitmap matched = cache.get(contextDirectory, entry);
+                CompressedBitmap intersection;
 
                 if (!entry.isNegated()) {
-                    ignored.addAll(matched);
-                    intersection = ContainerUtil.intersection(unignored, matched);
-                    modified = unignored.removeAll(intersection);
+                    ignored[0] = ignored[0].or(matched);
+                    intersection = unignored[0].and(matched);
+                    unignored[0] = unignored[0].andNot(intersection);
                 } else {
-                    unignored.addAll(matched);
-                    intersection = ContainerUtil.intersection(ignored, matched);
-                    modified = ignored.removeAll(intersection);
+                    unignored[0] = unignored[0].or(matched);
+                    intersection = ignored[0].and(matched);
+                    ignored[0] = ignored[0].andNot(intersection);
                 }
 
-                if (modified) {
+                if (!intersection.isEmpty()) {
                     return;
                 }
 
-                for (IgnoreEntry recent : map.keySet()) {
-                    Set<String> recentValues = map.get(recent);
+                for (Map.Entry<IgnoreEntry, CompressedBitmap> item : map.entrySet()) {
+                    IgnoreEntry recent = item.getKey();
+                    CompressedBitmap recentValues = item.getValue();
                     if (recentValues.isEmpty() || matched.isEmpty()) {
                         continue;
                     }
 
                     if (entry.isNegated() == recent.isNegated()) {
-                        if (recentValues.containsAll(matched)) {
+                        if (matched.isSubsetOf(recentValues)) {
                             entries.add(Pair.create(recent, entry));
-                        } else if (matched.containsAll(recentValues)) {
+                        } else if (recentValues.isSubsetOf(matched)) {
                             entries.add(Pair.create(entry, recent));
                         }
                     } else {
-                        if (intersection.containsAll(recentValues)) {
+                        if (recentValues.isSubsetOf(intersection)) {
                             entries.add(Pair.create(entry, recent));
                         }
                     }
@@ -193,22 +185,6 @@ public class IgnoreCoverEntryInspection extends LocalInspectionTool {
         return problemsHolder.getResultsArray();
     }
 
-    /**
-     * Returns the paths list for the given {@link IgnoreEntry} in {@link VirtualFile} context.
-     * Stores fetched data in {@link #cacheMap} to limit the queries to the files tree.
-     *
-     * @param contextDirectory current context
-     * @param entry to check
-     * @return paths list
-     */
-    private Set<String> getPathsSet(VirtualFile contextDirectory, IgnoreEntry entry) {
-        final String key = contextDirectory.getPath() + SEPARATOR + entry.getText();
-        if (!cacheMap.containsKey(key)) {
-            cacheMap.put(key, ContainerUtil.newHashSet(Glob.findAsPaths(contextDirectory, entry, true)));
-        }
-        return cacheMap.get(key);
-    }
-
     /**
      * Helper for inspection message generating.
      *
@@ -237,4 +213,132 @@ public class IgnoreCoverEntryInspection extends LocalInspectionTool {
     public boolean runForWholeFile() {
         return true;
     }
+
+    /**
+     * Cache of the paths matched by the entries. Files placed under each context directory are enumerated once into
+     * the {@link PathsTable}, so matched paths of each entry are kept as a {@link CompressedBitmap} of the table ids
+     * and compared with the word-level set operations.
+     */
+    private static class PathsCache {
+        /** Enumerated paths, keyed by the context directory. */
+        @NotNull
+        private final ConcurrentMap<String, PathsTable> tables = ContainerUtil.newConcurrentMap();
+
+        /** Matched paths bitmaps, keyed by the context directory and the entry text. */
+        @NotNull
+        private final ConcurrentMap<String, CompressedBitmap> bitmaps = ContainerUtil.newConcurrentMap();
+
+        /**
+         * Returns the matched paths bitmap for the given {@link IgnoreEntry} in {@link VirtualFile} context.
+         * Fetched data is stored to limit the queries to the files tree.
+         *
+         * @param contextDirectory current context
+         * @param entry            to check
+         * @return matched paths bitmap
+         */
+        @NotNull
+        public CompressedBitmap get(@NotNull VirtualFile contextDirectory, @NotNull IgnoreEntry entry) {
+            final String key = contextDirectory.getPath() + SEPARATOR + entry.getText();
+            CompressedBitmap bitmap = bitmaps.get(key);
+            if (bitmap == null) {
+                final GlobMatcher matcher = Glob.createMatcher(entry);
+                bitmap = matcher == null ? CompressedBitmap.EMPTY : getTable(contextDirectory).match(matcher);
+                bitmaps.put(key, bitmap);
+            }
+            return bitmap;
+        }
+
+        /**
+         * Returns paths enumerated in the given context directory. Files tree is walked only once per directory.
+         *
+         * @param contextDirectory current context
+         * @return paths table
+         */
+        @NotNull
+        private PathsTable getTable(@NotNull VirtualFile contextDirectory) {
+            PathsTable table = tables.get(contextDirectory.getPath());
+            if (table == null) {
+                table = new PathsTable(contextDirectory);
+                final PathsTable current = tables.putIfAbsent(contextDirectory.getPath(), table);
+                if (current != null) {
+                    table = current;
+                }
+            }
+            return table;
+        }
+    }
+
+    /**
+     * Relative paths of the files placed under the context directory, enumerated in the depth-first order. Children
+     * of the file directly follow it, so the file and all of its children have consecutive ids. VCS directories are
+     * skipped, just like {@link Glob#find(VirtualFile, IgnoreEntry, boolean)} does.
+     */
+    private static class PathsTable {
+        /** Relative paths, indexed by the ids. */
+        @NotNull
+        private final String[] paths;
+
+        /** Ids following the last child of the file, indexed by the file id. */
+        @NotNull
+        private final int[] ends;
+
+        /**
+         * Builds a new instance of {@link PathsTable}.
+         *
+         * @param root context directory
+         */
+        public PathsTable(@NotNull final VirtualFile root) {
+            final List<String> paths = ContainerUtil.newArrayList();
+            final TIntArrayList ends = new TIntArrayList();
+            final TIntArrayList parents = new TIntArrayList();
+
+            VfsUtil.visitChildrenRecursively(root, new VirtualFileVisitor<Object>(VirtualFileVisitor.NO_FOLLOW_SYMLINKS) {
+                @Override
+                public boolean visitFile(@NotNull VirtualFile file) {
+                    ProgressManager.checkCanceled();
+                    final String path = Utils.getRelativePath(root, file);
+                    if (path == null || Utils.isVcsDirectory(file)) {
+                        return false;
+                    }
+
+                    parents.add(paths.size());
+                    paths.add(path);
+                    ends.add(0);
+                    return true;
+                }
+
+                @Override
+                public void afterChildrenVisited(@NotNull VirtualFile file) {
+                    ends.set(parents.remove(parents.size() - 1), paths.size());
+                }
+            });
+
+            this.paths = ArrayUtil.toStringArray(paths);
+            this.ends = ends.toNativeArray();
+        }
+
+        /**
+         * Matches all of the paths against the given matcher. Children of the matched file are matched too, without
+         * checking them.
+         *
+         * @param matcher entry matcher
+         * @return matched paths bitmap
+         */
+        @NotNull
+        public CompressedBitmap match(@NotNull GlobMatcher matcher) {
+            final TIntArrayList ids = new TIntArrayList();
+            int id = 0;
+            while (id < paths.length) {
+                if (matcher.matches(paths[id])) {
+                    for (int child = id; child < ends[id]; child++) {
+                        ids.add(child);
+                    }
+                    id = ends[id];
+                } else {
+                    id++;
+                }
+            }
+            return CompressedBitmap.of(ids.toNativeArray());
+        }
+    }
 }
@@ -39,13 +39,12 @@ import mobi.hsz.idea.gitignore.IgnoreBundle;
 import mobi.hsz.idea.gitignore.psi.IgnoreEntry;
 import mobi.hsz.idea.gitignore.psi.IgnoreVisitor;
 import mobi.hsz.idea.gitignore.util.Glob;
-import mobi.hsz.idea.gitignore.util.MatcherUtil;
+import mobi.hsz.idea.gitignore.util.GlobMatcher;
 import mobi.hsz.idea.gitignore.util.Utils;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.Collection;
 import java.util.List;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
@@ -107,7 +106,11 @@ public class IgnoreUnusedEntryInspection extends LocalInspectionTool {
                     return false;
                 }
 
-                final Matcher matcher = pattern.matcher("");
+                final GlobMatcher matcher = Glob.createMatcher(entry);
+                if (matcher == null) {
+                    return false;
+                }
+
                 final VirtualFile projectRoot = project.getBaseDir();
                 final List<VirtualFile> matched = ContainerUtil.newArrayList();
                 final Collection<VirtualFile> files = cache.getFilesForPattern(project, pattern);
@@ -118,7 +121,7 @@ public class IgnoreUnusedEntryInspection extends LocalInspectionTool {
                             continue;
                         }
                         String path = Utils.getRelativePath(projectRoot, root);
-                        if (MatcherUtil.match(matcher, path)) {
+                        if (matcher.matches(path)) {
                             matched.add(file);
                             return false;
                         }
@@ -0,0 +1,175 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 hsz Jakub Chrzanowski <jakub@hsz.mobi>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package mobi.hsz.idea.gitignore.indexing;
+
+import mobi.hsz.idea.gitignore.IgnoreBundle;
+import mobi.hsz.idea.gitignore.parser.IgnoreRulesReader;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Normalized rules of the single ignore file, stored in the {@link IgnoreRulesIndex}. Comments and <code>syntax:</code>
+ * lines are dropped - each entry is kept with its text and resolved syntax and negation, so rules can be compiled
+ * without reading the file again.
+ *
+ * @author Jakub Chrzanowski <jakub@hsz.mobi>
+ * @since 1.3.3
+ */
+public class IgnoreRules implements IgnoreRulesReader.Visitor {
+    /** Flag of the negated entry. */
+    static final byte NEGATED = 1;
+
+    /** Flag of the entry with {@link IgnoreBundle.Syntax#REGEXP} syntax. */
+    static final byte REGEXP = 2;
+
+    /** Initial capacity of the entries arrays. */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** Texts of the entries, including the negation sign. */
+    @NotNull
+    private String[] texts;
+
+    /** Flags of the entries. */
+    @NotNull
+    private byte[] flags;
+
+    /** Amount of the entries. */
+    private int size;
+
+    /** Builds an empty instance of {@link IgnoreRules}, filled with {@link #visitEntry}. */
+    public IgnoreRules() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Builds an empty instance of {@link IgnoreRules} with the given capacity.
+     *
+     * @param capacity expected amount of the entries
+     */
+    IgnoreRules(int capacity) {
+        texts = new String[capacity];
+        flags = new byte[capacity];
+    }
+
+    @Override
+    public void visitEntry(@NotNull String text, @NotNull String value, @NotNull IgnoreBundle.Syntax syntax,
+                           boolean negated) {
+        add(text, (byte) ((negated ? NEGATED : 0) | (syntax.equals(IgnoreBundle.Syntax.REGEXP) ? REGEXP : 0)));
+    }
+
+    /**
+     * Passes all of the entries to the given visitor, in the order of appearance.
+     *
+     * @param visitor rules visitor
+     */
+    public void accept(@NotNull IgnoreRulesReader.Visitor visitor) {
+        for (int i = 0; i < size; i++) {
+            final boolean negated = (flags[i] & NEGATED) != 0;
+            visitor.visitEntry(
+                    texts[i],
+                    negated ? texts[i].substring(1) : texts[i],
+                    (flags[i] & REGEXP) != 0 ? IgnoreBundle.Syntax.REGEXP : IgnoreBundle.Syntax.GLOB,
+                    negated
+            );
+        }
+    }
+
+    /**
+     * Returns amount of the entries.
+     *
+     * @return entries count
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds entry with the raw flags.
+     *
+     * @param text entry text
+     * @param flag entry flags
+     */
+    void add(@NotNull String text, byte flag) {
+        if (size == texts.length) {
+            final int capacity = Math.max(INITIAL_CAPACITY, size * 2);
+            texts = Arrays.copyOf(texts, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+        }
+        texts[size] = text;
+        flags[size] = flag;
+        size++;
+    }
+
+    /**
+     * Returns text of the entry.
+     *
+     * @param index entry index
+     * @return entry text
+     */
+    @NotNull
+    String getText(int index) {
+        return texts[index];
+    }
+
+    /**
+     * Returns flags of the entry.
+     *
+     * @param index entry index
+     * @return entry flags
+     */
+    byte getFlags(int index) {
+        return flags[index];
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof IgnoreRules)) {
+            return false;
+        }
+        final IgnoreRules rules = (IgnoreRules) o;
+        if (size != rules.size) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (flags[i] != rules.flags[i] || !texts[i].equals(rules.texts[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = size;
+        for (int i = 0; i < size; i++) {
+            result = 31 * (31 * result + texts[i].hashCode()) + flags[i];
+        }
+        return result;
+    }
+}
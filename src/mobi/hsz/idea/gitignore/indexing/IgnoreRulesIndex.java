@@ -0,0 +1,152 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 hsz Jakub Chrzanowski <jakub@hsz.mobi>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package mobi.hsz.idea.gitignore.indexing;
+
+import com.intellij.openapi.fileTypes.FileType;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.indexing.DataIndexer;
+import com.intellij.util.indexing.FileBasedIndex;
+import com.intellij.util.indexing.FileBasedIndexExtension;
+import com.intellij.util.indexing.FileContent;
+import com.intellij.util.indexing.ID;
+import com.intellij.util.io.DataExternalizer;
+import com.intellij.util.io.EnumeratorStringDescriptor;
+import com.intellij.util.io.IOUtil;
+import com.intellij.util.io.KeyDescriptor;
+import mobi.hsz.idea.gitignore.file.type.IgnoreFileType;
+import mobi.hsz.idea.gitignore.lang.IgnoreLanguage;
+import mobi.hsz.idea.gitignore.parser.IgnoreRulesReader;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Index of the normalized rules of the ignore files, keyed by the {@link IgnoreLanguage} id. Rules are stored
+ * persistently, so they do not have to be read and parsed again on each project opening - only files with changed
+ * content are indexed again.
+ *
+ * @author Jakub Chrzanowski <jakub@hsz.mobi>
+ * @since 1.3.3
+ */
+public class IgnoreRulesIndex extends FileBasedIndexExtension<String, IgnoreRules> {
+    /** Index id. */
+    public static final ID<String, IgnoreRules> KEY = ID.create("IgnoreRulesIndex");
+
+    /** Index version, has to be incremented with each change of the stored data format. */
+    private static final int VERSION = 1;
+
+    /** Indexer that reads rules of the ignore file. */
+    private static final DataIndexer<String, IgnoreRules, FileContent> INDEXER =
+            new DataIndexer<String, IgnoreRules, FileContent>() {
+                @NotNull
+                @Override
+                public Map<String, IgnoreRules> map(@NotNull FileContent inputData) {
+                    final FileType fileType = inputData.getFileType();
+                    if (!(fileType instanceof IgnoreFileType)) {
+                        return Collections.emptyMap();
+                    }
+
+                    final IgnoreLanguage language = ((IgnoreFileType) fileType).getIgnoreLanguage();
+                    final IgnoreRules rules = new IgnoreRules();
+                    new IgnoreRulesReader(language.getDefaultSyntax(), language.isSyntaxSupported())
+                            .read(inputData.getContentAsText(), rules);
+                    return Collections.singletonMap(language.getID(), rules);
+                }
+            };
+
+    /** Externalizer of the {@link IgnoreRules}. */
+    private static final DataExternalizer<IgnoreRules> EXTERNALIZER = new DataExternalizer<IgnoreRules>() {
+        @Override
+        public void save(@NotNull DataOutput out, IgnoreRules rules) throws IOException {
+            out.writeInt(rules.size());
+            for (int i = 0; i < rules.size(); i++) {
+                IOUtil.writeUTF(out, rules.getText(i));
+                out.writeByte(rules.getFlags(i));
+            }
+        }
+
+        @Override
+        public IgnoreRules read(@NotNull DataInput in) throws IOException {
+            final int size = in.readInt();
+            final IgnoreRules rules = new IgnoreRules(size);
+            for (int i = 0; i < size; i++) {
+                rules.add(IOUtil.readUTF(in), in.readByte());
+            }
+            return rules;
+        }
+    };
+
+    /** Accepts only the ignore files. */
+    private static final FileBasedIndex.InputFilter INPUT_FILTER = new FileBasedIndex.InputFilter() {
+        @Override
+        public boolean acceptInput(@NotNull VirtualFile file) {
+            return file.getFileType() instanceof IgnoreFileType;
+        }
+    };
+
+    @NotNull
+    @Override
+    public ID<String, IgnoreRules> getName() {
+        return KEY;
+    }
+
+    @NotNull
+    @Override
+    public DataIndexer<String, IgnoreRules, FileContent> getIndexer() {
+        return INDEXER;
+    }
+
+    @NotNull
+    @Override
+    public KeyDescriptor<String> getKeyDescriptor() {
+        return new EnumeratorStringDescriptor();
+    }
+
+    @NotNull
+    @Override
+    public DataExternalizer<IgnoreRules> getValueExternalizer() {
+        return EXTERNALIZER;
+    }
+
+    @NotNull
+    @Override
+    public FileBasedIndex.InputFilter getInputFilter() {
+        return INPUT_FILTER;
+    }
+
+    @Override
+    public boolean dependsOnFileContent() {
+        return true;
+    }
+
+    @Override
+    public int getVersion() {
+        return VERSION;
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 hsz Jakub Chrzanowski <jakub@hsz.mobi>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package mobi.hsz.idea.gitignore.parser;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.text.CharSequenceReader;
+import mobi.hsz.idea.gitignore.IgnoreBundle;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+/**
+ * Lightweight line reader of the ignore rules that does not build the PSI tree. Lines are interpreted the same way
+ * as {@link mobi.hsz.idea.gitignore.lexer.IgnoreLexer} and {@link mobi.hsz.idea.gitignore.psi.impl.IgnoreEntryExtImpl}
+ * do: leading whitespaces are skipped, <code>#</code> starts a comment, leading <code>!</code> negates the entry and
+ * <code>syntax:</code> line changes the syntax of the following entries. Entry value is passed as-is, so escaping and
+ * trailing slash are handled later by the {@link mobi.hsz.idea.gitignore.util.Glob} utils.
+ *
+ * @author Jakub Chrzanowski <jakub@hsz.mobi>
+ * @since 1.3.3
+ */
+public class IgnoreRulesReader {
+    /** Comment prefix. */
+    private static final char COMMENT = '#';
+
+    /** Negation prefix. */
+    private static final char NEGATION = '!';
+
+    /** Syntax line prefix. */
+    private static final String SYNTAX_KEY = "syntax:";
+
+    /** Visitor of the rules read from the ignore file. */
+    public interface Visitor {
+        /**
+         * Called for each entry, in the order of appearance.
+         *
+         * @param text    entry text, including the negation sign
+         * @param value   entry value without the negation sign
+         * @param syntax  entry syntax
+         * @param negated entry is negated
+         */
+        void visitEntry(@NotNull String text, @NotNull String value, @NotNull IgnoreBundle.Syntax syntax,
+                        boolean negated);
+    }
+
+    /** Syntax used when no <code>syntax:</code> line precedes the entry. */
+    @NotNull
+    private final IgnoreBundle.Syntax defaultSyntax;
+
+    /** <code>syntax:</code> lines are recognized. */
+    private final boolean syntaxSupported;
+
+    /**
+     * Builds a new instance of {@link IgnoreRulesReader}.
+     *
+     * @param defaultSyntax   syntax used when no <code>syntax:</code> line precedes the entry
+     * @param syntaxSupported <code>syntax:</code> lines are recognized, otherwise they are read as entries
+     */
+    public IgnoreRulesReader(@NotNull IgnoreBundle.Syntax defaultSyntax, boolean syntaxSupported) {
+        this.defaultSyntax = defaultSyntax;
+        this.syntaxSupported = syntaxSupported;
+    }
+
+    /**
+     * Reads rules of the given file. Unsaved changes of the loaded document are taken into account, otherwise
+     * contents are streamed from the file. Should be called in the read action.
+     *
+     * @param file    ignore file
+     * @param visitor rules visitor
+     * @throws IOException if file cannot be read
+     */
+    public void read(@NotNull VirtualFile file, @NotNull Visitor visitor) throws IOException {
+        final Document document = FileDocumentManager.getInstance().getCachedDocument(file);
+        if (document != null) {
+            read(document.getCharsSequence(), visitor);
+            return;
+        }
+
+        final Reader reader = new InputStreamReader(file.getInputStream(), file.getCharset());
+        try {
+            read(reader, visitor);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Reads rules from the given text.
+     *
+     * @param text    ignore file contents
+     * @param visitor rules visitor
+     */
+    public void read(@NotNull CharSequence text, @NotNull Visitor visitor) {
+        try {
+            read(new CharSequenceReader(text), visitor);
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Reads rules line by line from the given reader.
+     *
+     * @param reader  ignore file contents
+     * @param visitor rules visitor
+     * @throws IOException if contents cannot be read
+     */
+    public void read(@NotNull Reader reader, @NotNull Visitor visitor) throws IOException {
+        final BufferedReader lines = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        IgnoreBundle.Syntax syntax = defaultSyntax;
+        boolean syntaxPending = false;
+
+        String line;
+        while ((line = lines.readLine()) != null) {
+            final int start = skipWhitespaces(line, 0);
+            if (start == line.length()) {
+                continue;
+            }
+
+            // syntax key followed by an empty line takes its value from the next non-empty line
+            if (syntaxPending) {
+                syntaxPending = false;
+                if (isEntryStart(line, start)) {
+                    syntax = resolveSyntax(line.substring(start), syntax);
+                    continue;
+                }
+            }
+
+            final char first = line.charAt(start);
+            if (first == COMMENT) {
+                continue;
+            }
+
+            if (syntaxSupported && line.startsWith(SYNTAX_KEY, start)) {
+                final int valueStart = skipWhitespaces(line, start + SYNTAX_KEY.length());
+                if (valueStart == line.length()) {
+                    syntaxPending = true;
+                } else {
+                    syntax = resolveSyntax(line.substring(valueStart), syntax);
+                }
+                continue;
+            }
+
+            if (first == NEGATION) {
+                // negation has to be followed directly by the entry, otherwise lexer does not produce one
+                if (!isEntryStart(line, start + 1) || (syntaxSupported && line.startsWith(SYNTAX_KEY, start + 1))) {
+                    continue;
+                }
+                visitor.visitEntry(line.substring(start), line.substring(start + 1), syntax, true);
+            } else {
+                visitor.visitEntry(line.substring(start), line.substring(start), syntax, false);
+            }
+        }
+    }
+
+    /**
+     * Resolves syntax set with the <code>syntax:</code> line. Unknown syntax does not change the current one.
+     *
+     * @param value   syntax value
+     * @param current current syntax
+     * @return resolved syntax
+     */
+    @NotNull
+    private static IgnoreBundle.Syntax resolveSyntax(@NotNull String value, @NotNull IgnoreBundle.Syntax current) {
+        final IgnoreBundle.Syntax syntax = IgnoreBundle.Syntax.find(value);
+        return syntax == null ? current : syntax;
+    }
+
+    /**
+     * Checks if entry can start at the given position.
+     *
+     * @param line  current line
+     * @param index position in the line
+     * @return entry can start at the position
+     */
+    private static boolean isEntryStart(@NotNull String line, int index) {
+        if (index >= line.length()) {
+            return false;
+        }
+        final char c = line.charAt(index);
+        return c != COMMENT && c != NEGATION && !isWhitespace(c);
+    }
+
+    /**
+     * Returns position of the first non-whitespace character, starting from the given index.
+     *
+     * @param line  current line
+     * @param index start position
+     * @return position or line length
+     */
+    private static int skipWhitespaces(@NotNull String line, int index) {
+        while (index < line.length() && isWhitespace(line.charAt(index))) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Checks if character is a line whitespace recognized by the lexer.
+     *
+     * @param c character
+     * @return is whitespace
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\f';
+    }
+}
@@ -37,7 +37,7 @@ import mobi.hsz.idea.gitignore.FilesIndexCacheProjectComponent;
 import mobi.hsz.idea.gitignore.psi.IgnoreEntry;
 import mobi.hsz.idea.gitignore.psi.IgnoreFile;
 import mobi.hsz.idea.gitignore.util.Glob;
-import mobi.hsz.idea.gitignore.util.MatcherUtil;
+import mobi.hsz.idea.gitignore.util.GlobMatcher;
 import mobi.hsz.idea.gitignore.util.Utils;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -46,7 +46,6 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ConcurrentMap;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
@@ -214,7 +213,7 @@ public class IgnoreReferenceSet extends FileReferenceSet {
                     PsiDirectory parent = getElement().getContainingFile().getParent();
                     final VirtualFile root = isOuterFile ? contextVirtualFile : ((parent != null) ? parent.getVirtualFile() : null);
                     final PsiManager manager = getElement().getManager();
-                    final Matcher matcher = pattern.matcher("");
+                    final GlobMatcher matcher = Glob.createMatcher(getCanonicalText(), entry.getSyntax());
 
                     Collection<VirtualFile> files = filesIndexCache.getFilesForPattern(context.getProject(), pattern);
                     if (files.isEmpty()) {
@@ -253,7 +252,7 @@ public class IgnoreReferenceSet extends FileReferenceSet {
                         }
 
                         String name = (root != null) ? Utils.getRelativePath(root, file) : file.getName();
-                        if (MatcherUtil.match(matcher, name)) {
+                        if (matcher != null && matcher.matches(name)) {
                             PsiFileSystemItem psiFileSystemItem = getPsiFileSystemItem(manager, file);
                             if (psiFileSystemItem == null) {
                                 continue;
@@ -58,7 +58,7 @@ public class IgnoreSettings implements PersistentStateComponent<Element>, Listen
         USER_TEMPLATES_TEMPLATE("template"), USER_TEMPLATES_NAME("name"), LANGUAGES("languages"),
         LANGUAGES_LANGUAGE("language"), LANGUAGES_ID("id"), IGNORED_FILE_STATUS("ignoredFileStatus"),
         OUTER_IGNORE_RULES("outerIgnoreRules"), OUTER_IGNORE_WRAPPER_HEIGHT("outerIgnoreWrapperHeight"),
-        VERSION("version");
+        FILES_CACHE_SIZE("filesCacheSize"), VERSION("version");
 
         private final String key;
 
@@ -97,6 +97,11 @@ public class IgnoreSettings implements PersistentStateComponent<Element>, Listen
      */
     private boolean outerIgnoreRules = true;
 
+    /**
+     * Memory budget of the files cache used to resolve entries, in megabytes.
+     */
+    private int filesCacheSize = 16;
+
     /**
      * Plugin version.
      */
@@ -147,6 +152,7 @@ public class IgnoreSettings implements PersistentStateComponent<Element>, Listen
         element.setAttribute(KEY.IGNORED_FILE_STATUS.toString(), Boolean.toString(ignoredFileStatus));
         element.setAttribute(KEY.OUTER_IGNORE_RULES.toString(), Boolean.toString(outerIgnoreRules));
         element.setAttribute(KEY.OUTER_IGNORE_WRAPPER_HEIGHT.toString(), Integer.toString(outerIgnoreWrapperHeight));
+        element.setAttribute(KEY.FILES_CACHE_SIZE.toString(), Integer.toString(filesCacheSize));
         element.setAttribute(KEY.VERSION.toString(), version);
 
         Element languagesElement = new Element(KEY.LANGUAGES.toString());
@@ -207,6 +213,9 @@ public class IgnoreSettings implements PersistentStateComponent<Element>, Listen
         value = element.getAttributeValue(KEY.OUTER_IGNORE_WRAPPER_HEIGHT.toString());
         if (value != null) outerIgnoreWrapperHeight = Integer.parseInt(value);
 
+        value = element.getAttributeValue(KEY.FILES_CACHE_SIZE.toString());
+        if (value != null) filesCacheSize = Integer.parseInt(value);
+
         Element languagesElement = element.getChild(KEY.LANGUAGES.toString());
         if (languagesElement != null) {
             for (Element languageElement : languagesElement.getChildren()) {
@@ -348,6 +357,25 @@ public class IgnoreSettings implements PersistentStateComponent<Element>, Listen
         this.outerIgnoreWrapperHeight = outerIgnoreWrapperHeight;
     }
 
+    /**
+     * Returns memory budget of the files cache used to resolve entries.
+     *
+     * @return budget in megabytes
+     */
+    public int getFilesCacheSize() {
+        return filesCacheSize;
+    }
+
+    /**
+     * Sets memory budget of the files cache used to resolve entries.
+     *
+     * @param filesCacheSize budget in megabytes
+     */
+    public void setFilesCacheSize(int filesCacheSize) {
+        this.notifyOnChange(KEY.FILES_CACHE_SIZE, this.filesCacheSize, filesCacheSize);
+        this.filesCacheSize = filesCacheSize;
+    }
+
     /**
      * Gets the {@link IgnoreLanguage} settings.
      *
@@ -28,7 +28,9 @@ import com.intellij.openapi.options.Configurable;
 import com.intellij.openapi.options.ConfigurationException;
 import com.intellij.openapi.options.SearchableConfigurable;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.project.ProjectManager;
 import com.intellij.openapi.vcs.VcsConfigurableProvider;
+import mobi.hsz.idea.gitignore.FilesIndexCacheProjectComponent;
 import mobi.hsz.idea.gitignore.IgnoreBundle;
 import mobi.hsz.idea.gitignore.ui.IgnoreSettingsPanel;
 import mobi.hsz.idea.gitignore.util.Utils;
@@ -102,6 +104,7 @@ public class IgnoreSettingsConfigurable implements SearchableConfigurable, VcsCo
                 || settingsPanel.templatesListPanel == null || !Utils.equalLists(settings.getUserTemplates(), settingsPanel.templatesListPanel.getList())
                 || settingsPanel.ignoredFileStatus == null || settings.isIgnoredFileStatus() != settingsPanel.ignoredFileStatus.isSelected()
                 || settingsPanel.outerIgnoreRules == null || settings.isOuterIgnoreRules() != settingsPanel.outerIgnoreRules.isSelected()
+                || settingsPanel.filesCacheSize == null || !settingsPanel.filesCacheSize.getValue().equals(settings.getFilesCacheSize())
                 || settingsPanel.languagesTable == null
                     || !((IgnoreSettingsPanel.LanguagesTableModel) settingsPanel.languagesTable.getModel()).equalSettings(settings.getLanguagesSettings())
                 ;
@@ -117,6 +120,7 @@ public class IgnoreSettingsConfigurable implements SearchableConfigurable, VcsCo
         settings.setUserTemplates(settingsPanel.templatesListPanel.getList());
         settings.setIgnoredFileStatus(settingsPanel.ignoredFileStatus != null && settingsPanel.ignoredFileStatus.isSelected());
         settings.setOuterIgnoreRules(settingsPanel.outerIgnoreRules != null && settingsPanel.outerIgnoreRules.isSelected());
+        if (settingsPanel.filesCacheSize != null) settings.setFilesCacheSize((Integer) settingsPanel.filesCacheSize.getValue());
         settings.setLanguagesSettings(((IgnoreSettingsPanel.LanguagesTableModel) settingsPanel.languagesTable.getModel()).getSettings());
     }
 
@@ -130,12 +134,35 @@ public class IgnoreSettingsConfigurable implements SearchableConfigurable, VcsCo
         if (settingsPanel.templatesListPanel != null) settingsPanel.templatesListPanel.resetForm(settings.getUserTemplates());
         if (settingsPanel.ignoredFileStatus != null) settingsPanel.ignoredFileStatus.setSelected(settings.isIgnoredFileStatus());
         if (settingsPanel.outerIgnoreRules != null) settingsPanel.outerIgnoreRules.setSelected(settings.isOuterIgnoreRules());
+        if (settingsPanel.filesCacheSize != null) settingsPanel.filesCacheSize.setValue(settings.getFilesCacheSize());
+        if (settingsPanel.filesCacheStats != null) settingsPanel.filesCacheStats.setText(getFilesCacheStats());
         if (settingsPanel.languagesTable != null) {
             IgnoreSettingsPanel.LanguagesTableModel model = (IgnoreSettingsPanel.LanguagesTableModel) settingsPanel.languagesTable.getModel();
             model.update(settings.getLanguagesSettings().clone());
         }
     }
 
+    /**
+     * Returns current footprint of the files caches of all open projects.
+     *
+     * @return footprint description
+     */
+    @NotNull
+    private static String getFilesCacheStats() {
+        int patterns = 0;
+        long memory = 0;
+        long evictions = 0;
+        for (Project project : ProjectManager.getInstance().getOpenProjects()) {
+            final FilesIndexCacheProjectComponent cache = FilesIndexCacheProjectComponent.getInstance(project);
+            if (cache != null) {
+                patterns += cache.getCachedPatternsCount();
+                memory += cache.getMemoryUsage();
+                evictions += cache.getEvictionsCount();
+            }
+        }
+        return IgnoreBundle.message("settings.general.filesCacheStats", patterns, memory / 1024, evictions);
+    }
+
     /**
      * Disposes the Swing components used for displaying the configuration.
      */
@@ -111,6 +111,16 @@ public class IgnoreSettingsPanel implements Disposable {
      */
     public JCheckBox outerIgnoreRules;
 
+    /**
+     * Memory budget of the files cache, in megabytes.
+     */
+    public JSpinner filesCacheSize;
+
+    /**
+     * Current footprint of the files cache.
+     */
+    public JBLabel filesCacheStats;
+
     /**
      * Splitter element.
      */
@@ -135,6 +145,8 @@ public class IgnoreSettingsPanel implements Disposable {
      * Create UI components.
      */
     private void createUIComponents() {
+        filesCacheSize = new JSpinner(new SpinnerNumberModel(16, 1, 1024, 1));
+
         templatesListPanel = new TemplatesListPanel();
         editorPanel = new EditorPanel();
         editorPanel.setPreferredSize(new Dimension(Integer.MAX_VALUE, 200));
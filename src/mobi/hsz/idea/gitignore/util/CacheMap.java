@@ -25,26 +25,47 @@
 package mobi.hsz.idea.gitignore.util;
 
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Comparing;
+import com.intellij.openapi.util.Computable;
 import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vcs.FileStatusManager;
 import com.intellij.openapi.vcs.ProjectLevelVcsManager;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.vfs.VirtualFileWithId;
+import com.intellij.openapi.vfs.newvfs.NewVirtualFile;
+import com.intellij.openapi.vfs.newvfs.persistent.FSRecords;
+import com.intellij.openapi.vfs.newvfs.persistent.PersistentFS;
 import com.intellij.testFramework.LightVirtualFile;
+import com.intellij.util.ArrayUtil;
 import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.containers.HashMap;
-import mobi.hsz.idea.gitignore.psi.IgnoreEntry;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TIntIntHashMap;
+import gnu.trove.TIntIntProcedure;
+import mobi.hsz.idea.gitignore.indexing.IgnoreRules;
+import mobi.hsz.idea.gitignore.lang.IgnoreLanguage;
+import mobi.hsz.idea.gitignore.parser.IgnoreRulesReader;
 import mobi.hsz.idea.gitignore.psi.IgnoreFile;
-import mobi.hsz.idea.gitignore.psi.IgnoreVisitor;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedList;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * {@link HashMap} cache helper.
@@ -53,10 +74,136 @@ import java.util.regex.Pattern;
  * @since 1.0.2
  */
 public class CacheMap {
-    private final ConcurrentMap<IgnoreFile, Pair<Set<Integer>, List<Pair<Matcher, Boolean>>>> map = ContainerUtil.newConcurrentMap();
+    /** Logger instance. */
+    private static final Logger LOG = Logger.getInstance("#mobi.hsz.idea.gitignore.util.CacheMap");
 
-    /** Cache {@link HashMap} to store files statuses. */
-    private final HashMap<VirtualFile, Status> statuses = new HashMap<VirtualFile, Status>();
+    /** Name of the directory placed in the IDE system directory that holds persistent statuses. */
+    private static final String STORAGE_DIRECTORY = "ignore";
+
+    /** Name of the persistent statuses file. */
+    private static final String STORAGE_FILE = "statuses.dat";
+
+    private final ConcurrentMap<IgnoreFile, CompiledRules> map = ContainerUtil.newConcurrentMap();
+
+    /** Maximum amount of the changed rules that are checked against the cached statuses one by one. */
+    private static final int MAX_INCREMENTAL_RULES = 64;
+
+    /** Precedence order of the ignore files placed in the same directory - reversed natural order of their paths. */
+    private static final Comparator<IgnoreFile> PRECEDENCE = new Comparator<IgnoreFile>() {
+        @Override
+        public int compare(IgnoreFile file1, IgnoreFile file2) {
+            return StringUtil.naturalCompare(file2.getVirtualFile().getPath(), file1.getVirtualFile().getPath());
+        }
+    };
+
+    /**
+     * Rules tree - ignore files keyed by the directory they are placed in, in precedence order. Lookup walks only
+     * the parents of the checked file.
+     */
+    private final ConcurrentMap<VirtualFile, IgnoreFile[]> tree = ContainerUtil.newConcurrentMap();
+
+    /** Directories of the ignore files stored in the {@link #tree}. */
+    private final ConcurrentMap<IgnoreFile, VirtualFile> directories = ContainerUtil.newConcurrentMap();
+
+    /** Outer ignore files, in precedence order. They are checked after all of the files from the {@link #tree}. */
+    private volatile IgnoreFile[] outerFiles = new IgnoreFile[0];
+
+    /** Amount of bits used by the single {@link #statuses} entry. */
+    private static final int ENTRY_BITS = 16;
+
+    /** Amount of bits used by the status in the {@link #statuses} entry, remaining bits hold the generation. */
+    private static final int STATUS_BITS = 2;
+
+    /** Maximum generation that fits into the {@link #statuses} entry. */
+    private static final int MAX_GENERATION = (1 << (ENTRY_BITS - STATUS_BITS)) - 1;
+
+    /**
+     * Cache of the files statuses keyed by the {@link VirtualFileWithId} file ids. Each status is stamped with the
+     * rules generation it was computed with.
+     */
+    private final PackedStatusMap statuses = new PackedStatusMap(ENTRY_BITS);
+
+    /** Current rules generation, incremented with each change of the ignore file. */
+    private final AtomicInteger generation = new AtomicInteger(1);
+
+    /** Generation of the last change that affects all of the files. */
+    private volatile int globalGeneration = 1;
+
+    /** Generation of the last change of the ignore file placed in the directory. */
+    private final ConcurrentMap<VirtualFile, Integer> directoryGenerations = ContainerUtil.newConcurrentMap();
+
+    /** Mask of the rules hash stored together with the status in the {@link #storage}. */
+    private static final int STORED_HASH_MASK = (1 << (32 - STATUS_BITS)) - 1;
+
+    /**
+     * Persistent storage of the files statuses keyed by the {@link VirtualFileWithId} file ids. Each status is
+     * stamped with the hash of the rules that govern the file, so it stays valid across the IDE restarts as long as
+     * the rules are not changed.
+     */
+    @Nullable
+    private final StatusStorage storage;
+
+    /**
+     * Hashes of the rules that govern the children of the directory, cleared with each change of the rules. Each hash
+     * is stored in the lower bits, together with the {@link #rulesVersion} it was computed with in the higher bits.
+     */
+    private final ConcurrentMap<VirtualFile, Long> rulesHashes = ContainerUtil.newConcurrentMap();
+
+    /** Serializes changes of the rules. */
+    private final Lock rulesLock = new ReentrantLock();
+
+    /**
+     * Version of the rules, incremented before and after each change of the rules, so it is odd while the change is
+     * in progress. Status is stored only if the version did not change since the status computation has started.
+     */
+    private final AtomicInteger rulesVersion = new AtomicInteger();
+
+    /** Order of the ignore files by their paths. */
+    private static final Comparator<VirtualFile> PATH_ORDER = new Comparator<VirtualFile>() {
+        @Override
+        public int compare(VirtualFile file1, VirtualFile file2) {
+            return file1.getPath().compareTo(file2.getPath());
+        }
+    };
+
+    /**
+     * Source rules of the ignore files, keyed by the ignore file. They are known before the rules are compiled and
+     * loaded, so the hash of the rules that govern the file can be computed right after the project is opened.
+     */
+    private final ConcurrentMap<VirtualFile, IgnoreRules> sourceRules = ContainerUtil.newConcurrentMap();
+
+    /** Ignore files with the known {@link #sourceRules}, keyed by the directory they are placed in, sorted by path. */
+    private final ConcurrentMap<VirtualFile, VirtualFile[]> sourceTree = ContainerUtil.newConcurrentMap();
+
+    /** Outer ignore files with the known {@link #sourceRules}, sorted by path. */
+    private volatile VirtualFile[] sourceOuterFiles = VirtualFile.EMPTY_ARRAY;
+
+    /** Source rules of all of the ignore files are known, so the stored statuses can be served. */
+    private volatile boolean sourceRulesKnown;
+
+    /** All of the rules are loaded, so the computed statuses can be stored. */
+    private volatile boolean loaded;
+
+    /** Maximum amount of the invalidated statuses checked one by one, above that all statuses are refreshed. */
+    static final int MAX_CHECKED_FILES = 10000;
+
+    /** Maximum amount of the files notified one by one, above that all statuses are refreshed at once. */
+    private static final int MAX_NOTIFIED_FILES = 500;
+
+    /** Guards {@link #pendingStatuses} and {@link #pendingAll}. */
+    private final Object pendingLock = new Object();
+
+    /**
+     * Statuses of the files invalidated since the last {@link #flushNotifications()} call, keyed by the file ids.
+     * The oldest status is kept, so it can be compared with the recomputed one.
+     */
+    private TIntIntHashMap pendingStatuses = new TIntIntHashMap();
+
+    /** All of the statuses have to be refreshed with the next {@link #flushNotifications()} call. */
+    private boolean pendingAll;
+
+    /** Queued notifications are already scheduled to be sent. */
+    private final AtomicBoolean notificationScheduled = new AtomicBoolean();
 
     /** Current project. */
     private final Project project;
@@ -72,6 +219,28 @@ public class CacheMap {
     public CacheMap(Project project) {
         this.project = project;
         this.statusManager = FileStatusManager.getInstance(project);
+        this.storage = openStorage(project);
+    }
+
+    /**
+     * Opens persistent statuses storage placed in the system directory of the project.
+     *
+     * @param project current project
+     * @return storage or <code>null</code> if it cannot be opened
+     */
+    @Nullable
+    private static StatusStorage openStorage(@NotNull Project project) {
+        if (project.isDefault()) {
+            return null;
+        }
+        final File file = new File(PathManager.getSystemPath(),
+                STORAGE_DIRECTORY + File.separator + project.getLocationHash() + File.separator + STORAGE_FILE);
+        try {
+            return new StatusStorage(file, FSRecords.getCreationTimestamp());
+        } catch (IOException e) {
+            LOG.warn(e);
+            return null;
+        }
     }
 
     /**
@@ -80,76 +249,274 @@ public class CacheMap {
      * @param file to add
      */
     public void add(@NotNull final IgnoreFile file) {
-        final Set<Integer> set = ContainerUtil.newHashSet();
+        publish(file, prepare(file), true);
+    }
+
+    /**
+     * Reads {@link IgnoreFile} rules in the read action and compiles them, without touching the cache.
+     * Can be called from multiple threads at once - result has to be passed to {@link #publish}.
+     *
+     * @param file to prepare
+     * @return compiled rules
+     */
+    @NotNull
+    public CompiledRules prepare(@NotNull IgnoreFile file) {
+        return prepare(readRules(file));
+    }
+
+    /**
+     * Compiles rules loaded from the {@link mobi.hsz.idea.gitignore.indexing.IgnoreRulesIndex}, without touching
+     * the cache. Can be called from multiple threads at once - result has to be passed to {@link #publish}.
+     *
+     * @param rules normalized rules of the ignore file
+     * @return compiled rules
+     */
+    @NotNull
+    public CompiledRules prepare(@NotNull IgnoreRules rules) {
+        return CompiledRules.compile(rules, null);
+    }
 
-        runVisitorInReadAction(file, new IgnoreVisitor() {
+    /**
+     * Publishes rules prepared with {@link #prepare(IgnoreFile)}, so they are used by the following lookups.
+     * Statuses of the affected files are invalidated. Notifications about the changed statuses are queued - if
+     * <code>flush</code> is not set, they are sent with the next {@link #flushNotifications()} call.
+     *
+     * @param file  ignore file
+     * @param rules compiled rules
+     * @param flush send queued notifications
+     */
+    public void publish(@NotNull IgnoreFile file, @NotNull CompiledRules rules, boolean flush) {
+        startRulesChange();
+        try {
+            map.put(file, rules);
+            addToTree(file);
+            updateSourceRules(file, rules.getSource());
+        } finally {
+            finishRulesChange();
+        }
+        invalidate(file);
+        if (flush) {
+            flushNotifications();
+        }
+    }
+
+    /**
+     * Checks if {@link IgnoreFile} has changed and rebuilds its cache. Only added or modified entries are compiled
+     * again and only the cached statuses of the files matched by the changed entries are invalidated.
+     *
+     * @param file to check
+     */
+    public void hasChanged(@NotNull IgnoreFile file) {
+        hasChanged(file, true);
+    }
+
+    /**
+     * Checks if {@link IgnoreFile} has changed and rebuilds its cache. Notifications about the changed statuses are
+     * queued - if <code>flush</code> is not set, they are sent with the next {@link #flushNotifications()} call, so
+     * changes of multiple files can be announced at once.
+     *
+     * @param file  to check
+     * @param flush send queued notifications
+     */
+    public void hasChanged(@NotNull IgnoreFile file, boolean flush) {
+        final CompiledRules recent = map.get(file);
+        final IgnoreRules rules = readRules(file);
+        if (recent != null && recent.getSource().equals(rules)) {
+            return;
+        }
+
+        final CompiledRules compiled = CompiledRules.compile(rules, recent);
+        final VirtualFile virtualFile = file.getVirtualFile();
+        final VirtualFile directory = virtualFile == null || file.isOuter() ? null : virtualFile.getParent();
+        final List<GlobMatcher> changed = recent == null ? null : recent.diff(compiled);
+        if (directory == null || changed == null || changed.size() > MAX_INCREMENTAL_RULES
+                || !(directory instanceof NewVirtualFile)) {
+            startRulesChange();
+            try {
+                map.put(file, compiled);
+                addToTree(file);
+                updateSourceRules(file, rules);
+            } finally {
+                finishRulesChange();
+            }
+            invalidate(file);
+        } else {
+            startRulesChange();
+            try {
+                map.put(file, compiled);
+                updateSourceRules(file, rules);
+            } finally {
+                finishRulesChange();
+            }
+            rulesHashes.clear();
+            if (!changed.isEmpty()) {
+                invalidateMatching((NewVirtualFile) directory, changed);
+            }
+        }
+
+        if (flush) {
+            flushNotifications();
+        }
+    }
+
+    /**
+     * Invalidates cached statuses of the files placed under the given directory that are matched by any of the
+     * given rules, together with their children. Only files already present in the VFS are visited - affected ids
+     * are collected in the read action first. Previous statuses of the invalidated files are queued.
+     *
+     * @param directory directory of the changed ignore file
+     * @param matchers  changed rules
+     */
+    private void invalidateMatching(@NotNull final NewVirtualFile directory, @NotNull final List<GlobMatcher> matchers) {
+        final TIntArrayList ids = ApplicationManager.getApplication().runReadAction(new Computable<TIntArrayList>() {
             @Override
-            public void visitEntry(@NotNull IgnoreEntry entry) {
-                set.add(entry.getText().trim().hashCode());
+            public TIntArrayList compute() {
+                return collectMatching(directory, matchers);
             }
         });
-
-        add(file, set);
+        clearStatuses(ids, false);
     }
 
     /**
-     * Adds new {@link IgnoreFile} to the cache and builds its hashCode and patterns sets.
+     * Collects ids of the files placed under the given directory that are matched by any of the given rules,
+     * together with their children. Should be called in the read action.
      *
-     * @param file to add
-     * @param set  entries hashCodes set
+     * @param directory directory of the changed ignore file
+     * @param matchers  changed rules
+     * @return ids of the affected files
      */
-    protected void add(@NotNull final IgnoreFile file, Set<Integer> set) {
-        final List<Pair<Matcher, Boolean>> matchers = ContainerUtil.newArrayList();
+    @NotNull
+    private static TIntArrayList collectMatching(@NotNull NewVirtualFile directory,
+                                                 @NotNull List<GlobMatcher> matchers) {
+        final TIntArrayList ids = new TIntArrayList();
+        final LinkedList<Pair<VirtualFile, String>> queue = new LinkedList<Pair<VirtualFile, String>>();
+        for (VirtualFile child : directory.getCachedChildren()) {
+            queue.add(Pair.create(child, child.getName()));
+        }
 
-        runVisitorInReadAction(file, new IgnoreVisitor() {
-            @Override
-            public void visitEntry(@NotNull IgnoreEntry entry) {
-                Pattern pattern = Glob.createPattern(entry);
-                if (pattern != null) {
-                    matchers.add(Pair.create(pattern.matcher(""), entry.isNegated()));
+        while (!queue.isEmpty()) {
+            final Pair<VirtualFile, String> pair = queue.removeFirst();
+            final VirtualFile file = pair.getFirst();
+            if (!file.isValid() || Utils.isVcsDirectory(file)) {
+                continue;
+            }
+
+            boolean matches = false;
+            for (GlobMatcher matcher : matchers) {
+                if (matcher.matches(pair.getSecond())) {
+                    matches = true;
+                    break;
                 }
             }
-        });
 
-        map.put(file, Pair.create(set, matchers));
-        statuses.clear();
-        statusManager.fileStatusesChanged();
+            if (matches) {
+                collectSubtree(file, true, ids);
+            } else if (file instanceof NewVirtualFile && file.isDirectory()) {
+                for (VirtualFile child : ((NewVirtualFile) file).getCachedChildren()) {
+                    queue.add(Pair.create(child, pair.getSecond() + "/" + child.getName()));
+                }
+            }
+        }
+        return ids;
     }
 
     /**
-     * Checks if {@link IgnoreFile} has changed and rebuilds its cache.
+     * Drops cached and stored statuses of the given files and all of their children already present in the VFS.
+     * Renamed or moved file keeps its id and the rules of its parent, so the status computed for the previous name
+     * or location must not be used again. Affected ids are collected in the read action first. Dropped statuses are
+     * queued.
      *
-     * @param file to check
+     * @param files created, deleted, moved or renamed files
      */
-    public void hasChanged(@NotNull IgnoreFile file) {
-        final Pair<Set<Integer>, List<Pair<Matcher, Boolean>>> recent = map.get(file);
-
-        final Set<Integer> set = ContainerUtil.newHashSet();
-        file.acceptChildren(new IgnoreVisitor() {
+    public void invalidateFiles(@NotNull final Collection<VirtualFile> files) {
+        final TIntArrayList ids = ApplicationManager.getApplication().runReadAction(new Computable<TIntArrayList>() {
             @Override
-            public void visitEntry(@NotNull IgnoreEntry entry) {
-                set.add(entry.getText().trim().hashCode());
+            public TIntArrayList compute() {
+                final TIntArrayList ids = new TIntArrayList();
+                for (VirtualFile file : files) {
+                    collectSubtree(file, true, ids);
+                }
+                return ids;
             }
         });
+        clearStatuses(ids, true);
+        flushNotifications();
+    }
 
-        if (recent == null || !set.equals(recent.getFirst())) {
-            add(file, set);
+    /**
+     * Collects ids of the given file and all of its children already present in the VFS. Should be called with the
+     * read access.
+     *
+     * @param root        root of the subtree
+     * @param includeRoot collect id of the root too
+     * @param ids         collected ids
+     */
+    private static void collectSubtree(@NotNull VirtualFile root, boolean includeRoot, @NotNull TIntArrayList ids) {
+        final LinkedList<VirtualFile> queue = new LinkedList<VirtualFile>();
+        queue.add(root);
+        while (!queue.isEmpty()) {
+            final VirtualFile file = queue.removeFirst();
+            if ((includeRoot || file != root) && file instanceof VirtualFileWithId) {
+                ids.add(((VirtualFileWithId) file).getId());
+            }
+            if (file instanceof NewVirtualFile && file.isValid() && file.isDirectory() && !Utils.isVcsDirectory(file)) {
+                queue.addAll(((NewVirtualFile) file).getCachedChildren());
+            }
         }
     }
 
     /**
-     * Simple wrapper for running read action
+     * Removes cached statuses of the files with the given ids. Removed statuses are queued.
      *
-     * @param file    {@link IgnoreFile} to run visitor on it
-     * @param visitor {@link IgnoreVisitor}
+     * @param ids    file ids
+     * @param stored remove statuses from the persistent {@link #storage} too
      */
-    private void runVisitorInReadAction(@NotNull final IgnoreFile file, @NotNull final IgnoreVisitor visitor) {
+    private void clearStatuses(@NotNull TIntArrayList ids, boolean stored) {
+        for (int i = 0; i < ids.size(); i++) {
+            final int id = ids.get(i);
+            final int value = statuses.get(id);
+            if (value != 0) {
+                statuses.put(id, 0);
+                queueStatus(id, value);
+            }
+            if (stored && storage != null) {
+                storage.put(id, 0);
+            }
+        }
+    }
+
+    /**
+     * Reads rules of the {@link IgnoreFile} in the read action.
+     *
+     * @param file to read
+     * @return normalized rules
+     */
+    @NotNull
+    private IgnoreRules readRules(@NotNull IgnoreFile file) {
+        final IgnoreRules rules = new IgnoreRules();
+        readRulesInReadAction(file, rules);
+        return rules;
+    }
+
+    /**
+     * Reads rules of the {@link IgnoreFile} in the read action. Rules are read directly from the file contents with
+     * {@link IgnoreRulesReader}, so the PSI tree of the file is not built.
+     *
+     * @param file    {@link IgnoreFile} to read rules from
+     * @param visitor {@link IgnoreRulesReader.Visitor}
+     */
+    private void readRulesInReadAction(@NotNull final IgnoreFile file, @NotNull final IgnoreRulesReader.Visitor visitor) {
         ApplicationManager.getApplication().runReadAction(new Runnable() {
             public void run() {
                 VirtualFile virtualFile = file.getVirtualFile();
                 if (virtualFile != null && (virtualFile instanceof LightVirtualFile
                         || (virtualFile instanceof VirtualFileWithId && ((VirtualFileWithId) virtualFile).getId() > 0))) {
-                    file.acceptChildren(visitor);
+                    final IgnoreLanguage language = (IgnoreLanguage) file.getLanguage();
+                    try {
+                        new IgnoreRulesReader(language.getDefaultSyntax(), language.isSyntaxSupported())
+                                .read(virtualFile, visitor);
+                    } catch (IOException ignored) {
+                    }
                 }
             }
         });
@@ -157,98 +524,841 @@ public class CacheMap {
 
     /**
      * Checks if given {@link VirtualFile} is ignored.
+     * <p>
+     * Statuses are evaluated top-down, just like git does: each parent directory that has no cached status yet is
+     * resolved once, starting from the top. Once any of the parents is ignored, the file and all of the directories
+     * between are ignored too and are not matched against the rules - file placed inside the ignored directory cannot
+     * be re-included.
      *
      * @param file to check
      * @return file is ignored
      */
     public boolean isFileIgnored(@NotNull VirtualFile file) {
-        Status status = statuses.get(file);
+        return resolveStatus(file).equals(Status.IGNORED);
+    }
 
-        if (status == null || status.equals(Status.UNTOUCHED)) {
-            status = getParentStatus(file);
-            statuses.put(file, status);
+    /**
+     * Checks which of the given files are ignored. Files are grouped by their parent directory - status of the
+     * directory, its VCS root and the rules that apply to its children are resolved once for the whole group.
+     *
+     * @param files to check
+     * @return ignored flags of the files
+     */
+    @NotNull
+    public Map<VirtualFile, Boolean> getIgnoredStatuses(@NotNull Collection<VirtualFile> files) {
+        final Map<VirtualFile, Boolean> result = ContainerUtil.newHashMap();
+        final Map<VirtualFile, List<VirtualFile>> groups = ContainerUtil.newHashMap();
+
+        for (VirtualFile file : files) {
+            final VirtualFile parent = file.getParent();
+            if (parent == null) {
+                result.put(file, isFileIgnored(file));
+                continue;
+            }
+
+            List<VirtualFile> group = groups.get(parent);
+            if (group == null) {
+                group = ContainerUtil.newArrayList();
+                groups.put(parent, group);
+            }
+            group.add(file);
         }
 
-        if (!status.equals(Status.UNTOUCHED)) {
-            return status.equals(Status.IGNORED);
+        final ProjectLevelVcsManager vcsManager = ProjectLevelVcsManager.getInstance(project);
+        for (Map.Entry<VirtualFile, List<VirtualFile>> entry : groups.entrySet()) {
+            final int version = rulesVersion.get();
+            final int current = generation.get();
+            final VirtualFile parent = entry.getKey();
+            final VirtualFile vcsRoot = vcsManager.getVcsRootFor(parent);
+            final boolean boundary = parent.equals(project.getBaseDir()) || parent.equals(vcsRoot);
+            final Status parentStatus = boundary ? Status.UNTOUCHED : resolveStatus(parent);
+            List<Pair<GlobRuleSet, String>> rules = null;
+
+            for (VirtualFile file : entry.getValue()) {
+                Status status = getStatus(file);
+                if (status == null) {
+                    if (file.isDirectory() && !Comparing.equal(vcsRoot, vcsManager.getVcsRootFor(file))) {
+                        status = resolveStatus(file);
+                    } else if (parentStatus.equals(Status.IGNORED)) {
+                        status = Status.IGNORED;
+                    } else {
+                        if (rules == null) {
+                            rules = getRules(parent, vcsRoot);
+                        }
+                        status = match(rules, file.getName());
+                    }
+                    setStatus(file, status, current, version);
+                }
+                result.put(file, status.equals(Status.IGNORED));
+            }
         }
 
-        final List<IgnoreFile> files = ContainerUtil.reverse(Utils.ignoreFilesSort(ContainerUtil.newArrayList(map.keySet())));
-        final ProjectLevelVcsManager projectLevelVcsManager = ProjectLevelVcsManager.getInstance(project);
+        return result;
+    }
 
-        for (final IgnoreFile ignoreFile : files) {
-            boolean outer = ignoreFile.isOuter();
-            final VirtualFile ignoreFileParent = ignoreFile.getVirtualFile().getParent();
+    /**
+     * Checks if status of the given file is already cached and up to date.
+     *
+     * @param file to check
+     * @return status is cached
+     */
+    public boolean isCached(@NotNull VirtualFile file) {
+        return getStatus(file) != null;
+    }
+
+    /**
+     * Returns status of the given {@link VirtualFile}.
+     * <p>
+     * Statuses are evaluated top-down, just like git does: each parent directory that has no cached status yet is
+     * resolved once, starting from the top. Once any of the parents is ignored, the file and all of the directories
+     * between are ignored too and are not matched against the rules - file placed inside the ignored directory cannot
+     * be re-included.
+     *
+     * @param file to check
+     * @return file status
+     */
+    @NotNull
+    private Status resolveStatus(@NotNull VirtualFile file) {
+        final int version = rulesVersion.get();
+        final int current = generation.get();
+        Status status = getStatus(file);
+        if (status != null) {
+            return status;
+        }
+
+        final VirtualFile vcsRoot = ProjectLevelVcsManager.getInstance(project).getVcsRootFor(file);
+        final LinkedList<VirtualFile> pending = new LinkedList<VirtualFile>();
+        Status parentStatus = Status.UNTOUCHED;
+
+        pending.add(file);
+        for (VirtualFile parent = file.getParent(); parent != null && !parent.equals(project.getBaseDir())
+                && (vcsRoot == null || !vcsRoot.equals(parent)); parent = parent.getParent()) {
+            final Status cached = getStatus(parent);
+            if (cached != null) {
+                parentStatus = cached;
+                break;
+            }
+            pending.addFirst(parent);
+        }
+
+        for (VirtualFile pendingFile : pending) {
+            status = parentStatus.equals(Status.IGNORED) ? Status.IGNORED : computeStatus(pendingFile, vcsRoot);
+            setStatus(pendingFile, status, current, version);
+            parentStatus = status;
+        }
+
+        return parentStatus;
+    }
+
+    /**
+     * Computes status of the file using rules of the ignore files placed in its parents and the outer ignore files.
+     *
+     * @param file    to check
+     * @param vcsRoot VCS root of the checked file
+     * @return file status
+     */
+    @NotNull
+    private Status computeStatus(@NotNull VirtualFile file, @Nullable VirtualFile vcsRoot) {
+        final VirtualFile parent = file.getParent();
+        if (parent == null) {
+            return Status.UNTOUCHED;
+        }
+        return match(getRules(parent, file.equals(vcsRoot) ? null : vcsRoot), file.getName());
+    }
 
-            if (!outer) {
-                if (ignoreFileParent == null || !Utils.isUnder(file, ignoreFileParent)) {
+    /**
+     * Collects rules that apply to the children of the given directory, in precedence order: rules of the ignore
+     * files placed in the directory and its parents, nearest first, followed by the outer ignore files. Each rule set
+     * is paired with the path of the directory relative to the rules root, so the child path is built by appending
+     * its name.
+     *
+     * @param directory parent directory of the checked files
+     * @param vcsRoot   VCS root of the checked files - ignore files placed outside of it are skipped
+     * @return rules with the path prefixes
+     */
+    @NotNull
+    private List<Pair<GlobRuleSet, String>> getRules(@NotNull VirtualFile directory, @Nullable VirtualFile vcsRoot) {
+        final List<Pair<GlobRuleSet, String>> rules = ContainerUtil.newArrayList();
+
+        for (VirtualFile parent = directory; parent != null; parent = parent.getParent()) {
+            final IgnoreFile[] files = tree.get(parent);
+            if (files == null) {
+                continue;
+            }
+
+            final String prefix = getPrefix(parent, directory);
+            for (IgnoreFile ignoreFile : files) {
+                if (vcsRoot != null && !Utils.isUnder(ignoreFile.getVirtualFile(), vcsRoot)) {
                     continue;
                 }
 
-                VirtualFile vcsRoot = projectLevelVcsManager.getVcsRootFor(file);
-                if (vcsRoot != null && !vcsRoot.equals(file) && !Utils.isUnder(ignoreFile.getVirtualFile(), vcsRoot)) {
-                    continue;
+                final CompiledRules value = map.get(ignoreFile);
+                if (value != null && prefix != null) {
+                    rules.add(Pair.create(value.getRuleSet(), prefix));
                 }
             }
+        }
 
-            final String path = Utils.getRelativePath(outer ? project.getBaseDir() : ignoreFileParent, file);
-            if (StringUtil.isEmpty(path)) {
-                continue;
+        final VirtualFile baseDir = project.getBaseDir();
+        final String prefix = baseDir == null ? null : getPrefix(baseDir, directory);
+        if (prefix != null) {
+            for (IgnoreFile ignoreFile : outerFiles) {
+                final CompiledRules value = map.get(ignoreFile);
+                if (value != null) {
+                    rules.add(Pair.create(value.getRuleSet(), prefix));
+                }
             }
+        }
 
-            List<Pair<Matcher, Boolean>> matchers = map.get(ignoreFile).getSecond();
-            for (Pair<Matcher, Boolean> pair : ContainerUtil.reverse(matchers)) {
-                if (MatcherUtil.match(pair.getFirst(), path)) {
-                    status = pair.getSecond() ? Status.UNIGNORED : Status.IGNORED;
-                    break;
-                }
+        return rules;
+    }
+
+    /**
+     * Returns path of the directory relative to the root, followed by the separator.
+     *
+     * @param root      rules root
+     * @param directory parent directory of the checked files
+     * @return path prefix or <code>null</code> if directory is not placed under the root
+     */
+    @Nullable
+    private static String getPrefix(@NotNull VirtualFile root, @NotNull VirtualFile directory) {
+        if (root.equals(directory)) {
+            return "";
+        }
+        final String path = Utils.getRelativePath(root, directory);
+        return StringUtil.isEmpty(path) ? null : path + "/";
+    }
+
+    /**
+     * Matches the file against the rules.
+     *
+     * @param rules rules with the path prefixes
+     * @param name  name of the checked file
+     * @return file status
+     */
+    @NotNull
+    private static Status match(@NotNull List<Pair<GlobRuleSet, String>> rules, @NotNull String name) {
+        for (Pair<GlobRuleSet, String> pair : rules) {
+            final GlobRuleSet ruleSet = pair.getFirst();
+            final int index = ruleSet.match(pair.getSecond() + name);
+            if (index >= 0) {
+                return ruleSet.isNegated(index) ? Status.UNIGNORED : Status.IGNORED;
             }
+        }
+        return Status.UNTOUCHED;
+    }
 
-            if (!status.equals(Status.UNTOUCHED)) {
-                break;
+    /**
+     * Places {@link IgnoreFile} in the rules tree, under its directory, or in the outer files list.
+     *
+     * @param file to add
+     */
+    private synchronized void addToTree(@NotNull IgnoreFile file) {
+        removeFromTree(file);
+
+        if (file.isOuter()) {
+            outerFiles = insert(outerFiles, file);
+            return;
+        }
+
+        final VirtualFile virtualFile = file.getVirtualFile();
+        final VirtualFile directory = virtualFile == null ? null : virtualFile.getParent();
+        if (directory != null) {
+            final IgnoreFile[] files = tree.get(directory);
+            tree.put(directory, insert(files == null ? new IgnoreFile[0] : files, file));
+            directories.put(file, directory);
+        }
+    }
+
+    /**
+     * Removes {@link IgnoreFile} from the rules tree and the outer files list.
+     *
+     * @param file to remove
+     */
+    private synchronized void removeFromTree(@NotNull IgnoreFile file) {
+        final VirtualFile directory = directories.remove(file);
+        if (directory != null) {
+            final IgnoreFile[] files = ArrayUtil.remove(tree.get(directory), file);
+            if (files.length > 0) {
+                tree.put(directory, files);
+            } else {
+                tree.remove(directory);
             }
         }
+        if (ArrayUtil.contains(file, outerFiles)) {
+            outerFiles = ArrayUtil.remove(outerFiles, file);
+        }
+    }
 
-        statuses.put(file, status);
-        return status.equals(Status.IGNORED);
+    /**
+     * Inserts {@link IgnoreFile} into the copy of the array, keeping the precedence order.
+     *
+     * @param files current files
+     * @param file  to insert
+     * @return new array
+     */
+    @NotNull
+    private static IgnoreFile[] insert(@NotNull IgnoreFile[] files, @NotNull IgnoreFile file) {
+        final IgnoreFile[] result = ArrayUtil.append(files, file);
+        Arrays.sort(result, PRECEDENCE);
+        return result;
     }
 
     /**
-     * Returns the status of the parent.
+     * Returns cached status of the file. Status is valid only if none of the ignore files that govern the file has
+     * changed since the status was computed. Valid status is stamped again with the current generation, so next
+     * check does not have to walk the parents.
      *
      * @param file to check
-     * @return any of the parents is ignored
+     * @return status or <code>null</code> if not cached or outdated
+     */
+    @Nullable
+    private Status getStatus(@NotNull VirtualFile file) {
+        if (!(file instanceof VirtualFileWithId)) {
+            return null;
+        }
+
+        final int id = ((VirtualFileWithId) file).getId();
+        if (!loaded) {
+            // statuses computed before all of the rules are loaded are incomplete, so stored ones are used first
+            final Status stored = getStoredStatus(file, id);
+            if (stored != null) {
+                return stored;
+            }
+        }
+
+        final int value = statuses.get(id);
+        if (value == 0) {
+            return getStoredStatus(file, id);
+        }
+
+        final Status status = Status.values()[(value & ((1 << STATUS_BITS) - 1)) - 1];
+        final int stamp = value >>> STATUS_BITS;
+        final int current = generation.get();
+        if (stamp != current) {
+            if (stamp > current || stamp < globalGeneration) {
+                return getStoredStatus(file, id);
+            }
+            for (VirtualFile parent = file.getParent(); parent != null; parent = parent.getParent()) {
+                final Integer directoryGeneration = directoryGenerations.get(parent);
+                if (directoryGeneration != null && stamp < directoryGeneration) {
+                    return getStoredStatus(file, id);
+                }
+            }
+            stamp(id, status, current);
+        }
+        return status;
+    }
+
+    /**
+     * Returns status of the file from the persistent {@link #storage}. Status is valid only if the rules that govern
+     * the file did not change since it was stored. Valid status is cached with the current generation.
+     *
+     * @param file to check
+     * @param id   file id
+     * @return status or <code>null</code> if not stored or outdated
+     */
+    @Nullable
+    private Status getStoredStatus(@NotNull VirtualFile file, int id) {
+        final VirtualFile parent = file.getParent();
+        if (storage == null || parent == null) {
+            return null;
+        }
+
+        final int version = rulesVersion.get();
+        final int current = generation.get();
+        final int value = storage.get(id);
+        if (value == 0) {
+            return null;
+        }
+        final Integer hash = getRulesHash(parent, version);
+        if (hash == null || (value >>> STATUS_BITS) != hash) {
+            return null;
+        }
+
+        final Status status = Status.values()[(value & ((1 << STATUS_BITS) - 1)) - 1];
+        stamp(id, status, current);
+        return status;
+    }
+
+    /**
+     * Returns hash of the rules that govern the children of the given directory - {@link #sourceRules} of the ignore
+     * files placed in the directory and its parents, the outer ignore files and the VCS root of the directory. Source
+     * rules are known before the rules are loaded, so hash is the same right after the project is opened and once
+     * the rules are loaded. Hash is cached only if the rules did not change while it was computed.
+     *
+     * @param directory parent directory of the checked files
+     * @param version   {@link #rulesVersion} read before the hash is requested
+     * @return rules hash or <code>null</code> if source rules are not known yet
+     */
+    @Nullable
+    private Integer getRulesHash(@NotNull VirtualFile directory, int version) {
+        final Long cached = rulesHashes.get(directory);
+        if (cached != null && (int) (cached >>> 32) == version) {
+            return (int) (long) cached;
+        }
+        if (!sourceRulesKnown) {
+            return null;
+        }
+
+        final VirtualFile vcsRoot = ProjectLevelVcsManager.getInstance(project).getVcsRootFor(directory);
+        int result = vcsRoot == null ? 0 : vcsRoot.getPath().hashCode();
+        for (VirtualFile parent = directory; parent != null; parent = parent.getParent()) {
+            final VirtualFile[] files = sourceTree.get(parent);
+            if (files != null) {
+                result = hashSourceRules(result, files);
+            }
+        }
+        result = hashSourceRules(result, sourceOuterFiles);
+
+        final int hash = result & STORED_HASH_MASK;
+        if ((version & 1) == 0 && rulesVersion.get() == version) {
+            rulesHashes.put(directory, ((long) version << 32) | hash);
+        }
+        return hash;
+    }
+
+    /**
+     * Combines the hash with the paths and {@link #sourceRules} of the given ignore files.
+     *
+     * @param hash  current hash
+     * @param files ignore files
+     * @return combined hash
+     */
+    private int hashSourceRules(int hash, @NotNull VirtualFile[] files) {
+        for (VirtualFile file : files) {
+            final IgnoreRules rules = sourceRules.get(file);
+            if (rules != null) {
+                hash = 31 * (31 * hash + file.getPath().hashCode()) + rules.hashCode();
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Sets source rules of all of the ignore files, read before their rules are compiled and loaded. Statuses
+     * stored in the previous session are served as soon as the source rules are known, until then none of them is
+     * used.
+     *
+     * @param files      source rules of the project ignore files
+     * @param outerFiles source rules of the outer ignore files
+     */
+    public void setSourceRules(@NotNull Map<VirtualFile, IgnoreRules> files,
+                               @NotNull Map<VirtualFile, IgnoreRules> outerFiles) {
+        startRulesChange();
+        try {
+            clearSourceRules();
+            for (Map.Entry<VirtualFile, IgnoreRules> entry : files.entrySet()) {
+                putSourceRules(entry.getKey(), entry.getValue(), false);
+            }
+            for (Map.Entry<VirtualFile, IgnoreRules> entry : outerFiles.entrySet()) {
+                putSourceRules(entry.getKey(), entry.getValue(), true);
+            }
+            sourceRulesKnown = true;
+        } finally {
+            finishRulesChange();
+        }
+    }
+
+    /**
+     * Marks all of the rules as loaded. Statuses computed before are incomplete, so they are not stored in the
+     * persistent {@link #storage} and the stored ones are used first.
+     */
+    public void finishLoading() {
+        startRulesChange();
+        try {
+            loaded = true;
+        } finally {
+            finishRulesChange();
+        }
+    }
+
+    /**
+     * Updates source rules of the given project {@link IgnoreFile}. Source rules of the outer ignore files are set
+     * only with {@link #setSourceRules}, as they are loaded once. Should be called while the change of the rules is
+     * in progress.
+     *
+     * @param file  ignore file
+     * @param rules source rules or <code>null</code> if file was removed
+     */
+    private void updateSourceRules(@NotNull IgnoreFile file, @Nullable IgnoreRules rules) {
+        final VirtualFile virtualFile = file.getVirtualFile();
+        if (file.isOuter() || virtualFile == null) {
+            return;
+        }
+        if (rules == null) {
+            removeSourceRules(virtualFile);
+        } else {
+            putSourceRules(virtualFile, rules, false);
+        }
+    }
+
+    /**
+     * Stores source rules of the ignore file.
+     *
+     * @param file  ignore file
+     * @param rules source rules
+     * @param outer file is an outer ignore file
+     */
+    private void putSourceRules(@NotNull VirtualFile file, @NotNull IgnoreRules rules, boolean outer) {
+        sourceRules.put(file, rules);
+        if (outer) {
+            if (!ArrayUtil.contains(file, sourceOuterFiles)) {
+                sourceOuterFiles = insertByPath(sourceOuterFiles, file);
+            }
+            return;
+        }
+
+        final VirtualFile directory = file.getParent();
+        if (directory != null) {
+            final VirtualFile[] files = sourceTree.get(directory);
+            if (files == null || !ArrayUtil.contains(file, files)) {
+                sourceTree.put(directory, insertByPath(files == null ? VirtualFile.EMPTY_ARRAY : files, file));
+            }
+        }
+    }
+
+    /**
+     * Removes source rules of the project ignore file.
+     *
+     * @param file ignore file
+     */
+    private void removeSourceRules(@NotNull VirtualFile file) {
+        sourceRules.remove(file);
+        final VirtualFile directory = file.getParent();
+        final VirtualFile[] files = directory == null ? null : sourceTree.get(directory);
+        if (files != null) {
+            final VirtualFile[] remaining = ArrayUtil.remove(files, file);
+            if (remaining.length > 0) {
+                sourceTree.put(directory, remaining);
+            } else {
+                sourceTree.remove(directory);
+            }
+        }
+    }
+
+    /** Removes all of the source rules. */
+    private void clearSourceRules() {
+        sourceRules.clear();
+        sourceTree.clear();
+        sourceOuterFiles = VirtualFile.EMPTY_ARRAY;
+    }
+
+    /**
+     * Inserts ignore file into the copy of the array, keeping the paths order.
+     *
+     * @param files current files
+     * @param file  to insert
+     * @return new array
      */
     @NotNull
-    protected Status getParentStatus(@NotNull VirtualFile file) {
-        VirtualFile parent = file.getParent();
-        VirtualFile vcsRoot = ProjectLevelVcsManager.getInstance(project).getVcsRootFor(file);
+    private static VirtualFile[] insertByPath(@NotNull VirtualFile[] files, @NotNull VirtualFile file) {
+        final VirtualFile[] result = ArrayUtil.append(files, file);
+        Arrays.sort(result, PATH_ORDER);
+        return result;
+    }
+
+    /**
+     * Caches status of the file. Files without id are not cached. Status is stored in the persistent
+     * {@link #storage} only if neither the rules generation nor the rules version has changed since the status
+     * computation has started, so it is stored together with the hash of the rules it was computed with.
+     *
+     * @param file       to update
+     * @param status     file status
+     * @param generation rules generation used to compute the status
+     * @param version    {@link #rulesVersion} read before the status computation has started
+     */
+    private void setStatus(@NotNull VirtualFile file, @NotNull Status status, int generation, int version) {
+        if (!(file instanceof VirtualFileWithId)) {
+            return;
+        }
+
+        final int id = ((VirtualFileWithId) file).getId();
+        stamp(id, status, generation);
+
+        // status computed with the outdated rules must not be stored with the hash of the current ones
+        final VirtualFile parent = file.getParent();
+        if (storage == null || parent == null || !loaded || (version & 1) != 0
+                || generation != this.generation.get()) {
+            return;
+        }
+        final Integer hash = getRulesHash(parent, version);
+        if (hash != null && rulesVersion.get() == version) {
+            storage.put(id, (hash << STATUS_BITS) | (status.ordinal() + 1));
+        }
+    }
+
+    /**
+     * Starts the change of the rules - has to be followed by {@link #finishRulesChange()} in the finally block.
+     * Statuses computed while the change is in progress are not stored in the persistent {@link #storage}.
+     */
+    private void startRulesChange() {
+        rulesLock.lock();
+        rulesVersion.incrementAndGet();
+    }
+
+    /** Finishes the change of the rules started with {@link #startRulesChange()}. */
+    private void finishRulesChange() {
+        rulesVersion.incrementAndGet();
+        rulesLock.unlock();
+    }
 
-        while (parent != null && !parent.equals(project.getBaseDir()) && (vcsRoot == null || !vcsRoot.equals(parent))) {
-            if (statuses.containsKey(parent) && statuses.get(parent) != null) {
-                return statuses.get(parent);
+    /**
+     * Caches status of the file in memory, without storing it in the persistent {@link #storage}.
+     *
+     * @param id         file id
+     * @param status     file status
+     * @param generation rules generation used to compute the status
+     */
+    private void stamp(int id, @NotNull Status status, int generation) {
+        statuses.put(id, (generation << STATUS_BITS) | (status.ordinal() + 1));
+    }
+
+    /**
+     * Invalidates statuses of the files governed by the given {@link IgnoreFile}. Change of the outer ignore file or
+     * the ignore file placed in the project root invalidates all of the statuses, otherwise only the statuses of the
+     * files placed under the ignore file directory are affected. Previous statuses of the affected files are queued,
+     * so only the files with the changed status are refreshed.
+     *
+     * @param file changed ignore file
+     */
+    private void invalidate(@NotNull IgnoreFile file) {
+        final VirtualFile virtualFile = file.getVirtualFile();
+        final VirtualFile directory = virtualFile == null || file.isOuter() ? null : virtualFile.getParent();
+
+        final boolean global = directory == null || directory.equals(project.getBaseDir());
+
+        rulesHashes.clear();
+        if (global) {
+            queueAll();
+        } else {
+            queueSubtree(directory);
+        }
+
+        synchronized (generation) {
+            final int next = generation.get() + 1;
+            if (next > MAX_GENERATION) {
+                queueAll();
+                statuses.clear();
+                directoryGenerations.clear();
+                globalGeneration = 1;
+                generation.set(1);
+                return;
             }
-            parent = parent.getParent();
+
+            // change has to be recorded before the new generation is published - otherwise lookup running in between
+            // would stamp the outdated status with the new generation and it would never be invalidated
+            if (global) {
+                globalGeneration = next;
+            } else {
+                directoryGenerations.put(directory, next);
+            }
+            generation.set(next);
         }
-        return Status.UNTOUCHED;
     }
 
     /**
-     * Clears cache.
+     * Queues previous status of the file. If too many statuses are queued, all of the statuses are refreshed at once.
+     *
+     * @param id    file id
+     * @param value cached {@link #statuses} entry
+     */
+    private void queueStatus(int id, int value) {
+        synchronized (pendingLock) {
+            if (pendingAll || pendingStatuses.containsKey(id)) {
+                return;
+            }
+            pendingStatuses.put(id, value);
+            if (pendingStatuses.size() > MAX_CHECKED_FILES) {
+                pendingAll = true;
+                pendingStatuses = new TIntIntHashMap();
+            }
+        }
+    }
+
+    /** Queues all of the cached statuses. */
+    private void queueAll() {
+        statuses.forEachEntry(new TIntIntProcedure() {
+            @Override
+            public boolean execute(int id, int value) {
+                queueStatus(id, value);
+                synchronized (pendingLock) {
+                    return !pendingAll;
+                }
+            }
+        });
+    }
+
+    /**
+     * Queues cached statuses of the files placed under the given directory. Children are not loaded, only files
+     * already present in the VFS are visited - their ids are collected in the read action first.
+     *
+     * @param directory root of the subtree
+     */
+    private void queueSubtree(@NotNull final VirtualFile directory) {
+        final TIntArrayList ids = ApplicationManager.getApplication().runReadAction(new Computable<TIntArrayList>() {
+            @Override
+            public TIntArrayList compute() {
+                final TIntArrayList ids = new TIntArrayList();
+                collectSubtree(directory, false, ids);
+                return ids;
+            }
+        });
+        for (int i = 0; i < ids.size(); i++) {
+            final int id = ids.get(i);
+            final int value = statuses.get(id);
+            if (value != 0) {
+                queueStatus(id, value);
+            }
+        }
+    }
+
+    /**
+     * Sends queued notifications to the {@link FileStatusManager}. Statuses of the queued files are computed again
+     * on the pooled thread and only files which ignored status has flipped are refreshed, with a single EDT call.
+     * When too many statuses were invalidated or flipped, all of the statuses are refreshed at once.
+     */
+    public void flushNotifications() {
+        if (!notificationScheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        ApplicationManager.getApplication().executeOnPooledThread(new Runnable() {
+            @Override
+            public void run() {
+                notificationScheduled.set(false);
+
+                final boolean all;
+                final TIntIntHashMap previous;
+                synchronized (pendingLock) {
+                    all = pendingAll;
+                    previous = pendingStatuses;
+                    pendingAll = false;
+                    pendingStatuses = new TIntIntHashMap();
+                }
+
+                if (project.isDisposed() || (!all && previous.isEmpty())) {
+                    return;
+                }
+
+                final List<VirtualFile> changed = all ? null : ApplicationManager.getApplication().runReadAction(
+                        new Computable<List<VirtualFile>>() {
+                            @Override
+                            public List<VirtualFile> compute() {
+                                return getFlippedFiles(previous);
+                            }
+                        }
+                );
+                if (changed != null && changed.isEmpty()) {
+                    return;
+                }
+
+                ApplicationManager.getApplication().invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (project.isDisposed()) {
+                            return;
+                        }
+                        if (changed == null || changed.size() > MAX_NOTIFIED_FILES) {
+                            statusManager.fileStatusesChanged();
+                            return;
+                        }
+                        for (VirtualFile file : changed) {
+                            if (file.isValid()) {
+                                statusManager.fileStatusChanged(file);
+                            }
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Computes statuses of the queued files again and compares them with the previous ones. Stops as soon as
+     * {@link #MAX_NOTIFIED_FILES} limit is exceeded.
+     *
+     * @param previous previous statuses keyed by the file ids
+     * @return files which ignored status has flipped
+     */
+    @NotNull
+    private List<VirtualFile> getFlippedFiles(@NotNull TIntIntHashMap previous) {
+        final List<VirtualFile> changed = ContainerUtil.newArrayList();
+        final PersistentFS fs = PersistentFS.getInstance();
+        previous.forEachEntry(new TIntIntProcedure() {
+            @Override
+            public boolean execute(int id, int value) {
+                final VirtualFile file = fs.findFileById(id);
+                if (file != null && file.isValid()) {
+                    final boolean ignored = (value & ((1 << STATUS_BITS) - 1)) == Status.IGNORED.ordinal() + 1;
+                    if (ignored != isFileIgnored(file)) {
+                        changed.add(file);
+                    }
+                }
+                return changed.size() <= MAX_NOTIFIED_FILES;
+            }
+        });
+        return changed;
+    }
+
+    /**
+     * Clears cache. Cached statuses are queued, so the files which were ignored are refreshed with the next
+     * {@link #flushNotifications()} call.
      */
     public void clear() {
-        map.clear();
+        queueAll();
+        startRulesChange();
+        try {
+            synchronized (this) {
+                map.clear();
+                tree.clear();
+                directories.clear();
+                outerFiles = new IgnoreFile[0];
+            }
+            clearSourceRules();
+            sourceRulesKnown = false;
+            loaded = false;
+        } finally {
+            finishRulesChange();
+        }
         statuses.clear();
-        statusManager.fileStatusesChanged();
+        directoryGenerations.clear();
+        rulesHashes.clear();
+    }
+
+    /** Writes persistent statuses to the disk and closes the storage. */
+    public void dispose() {
+        if (storage != null) {
+            storage.close();
+        }
     }
 
     /**
-     * Wrapper for {link #map.remove}.
+     * Wrapper for {link #map.remove}. File is also removed from the rules tree and statuses of the files governed
+     * by it are invalidated.
      *
      * @param file to remove
      * @return removed value
      */
-    public Pair<Set<Integer>, List<Pair<Matcher, Boolean>>> remove(IgnoreFile file) {
-        return map.remove(file);
+    @Nullable
+    public CompiledRules remove(@Nullable IgnoreFile file) {
+        if (file == null) {
+            return null;
+        }
+
+        final CompiledRules removed;
+        startRulesChange();
+        try {
+            removed = map.remove(file);
+            removeFromTree(file);
+            updateSourceRules(file, null);
+        } finally {
+            finishRulesChange();
+        }
+        if (removed != null) {
+            invalidate(file);
+            flushNotifications();
+        }
+        return removed;
     }
 }
@@ -0,0 +1,172 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 hsz Jakub Chrzanowski <jakub@hsz.mobi>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package mobi.hsz.idea.gitignore.util;
+
+import com.intellij.openapi.util.Pair;
+import com.intellij.util.containers.ContainerUtil;
+import mobi.hsz.idea.gitignore.IgnoreBundle;
+import mobi.hsz.idea.gitignore.indexing.IgnoreRules;
+import mobi.hsz.idea.gitignore.parser.IgnoreRulesReader;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiled rules of the single ignore file. Each entry keeps its own {@link GlobMatcher}, so when the file changes
+ * only added or modified entries have to be compiled again and the range of the changed entries can be found.
+ *
+ * @author Jakub Chrzanowski <jakub@hsz.mobi>
+ * @since 1.3.3
+ */
+public class CompiledRules {
+    /** Source rules. */
+    @NotNull
+    private final IgnoreRules source;
+
+    /** Keys of the entries - text and syntax. */
+    @NotNull
+    private final List<Pair<String, IgnoreBundle.Syntax>> keys;
+
+    /** Matchers of the entries, <code>null</code> for the invalid ones. */
+    @NotNull
+    private final List<GlobMatcher> matchers;
+
+    /** Rules joined into the single rule set. */
+    @NotNull
+    private final GlobRuleSet ruleSet;
+
+    /**
+     * Builds a new instance of {@link CompiledRules}.
+     *
+     * @param source   source rules
+     * @param keys     keys of the entries
+     * @param matchers matchers of the entries
+     * @param ruleSet  joined rules
+     */
+    private CompiledRules(@NotNull IgnoreRules source, @NotNull List<Pair<String, IgnoreBundle.Syntax>> keys,
+                          @NotNull List<GlobMatcher> matchers, @NotNull GlobRuleSet ruleSet) {
+        this.source = source;
+        this.keys = keys;
+        this.matchers = matchers;
+        this.ruleSet = ruleSet;
+    }
+
+    /**
+     * Compiles the given rules. Matchers of the entries already present in the previous version of the file are
+     * reused.
+     *
+     * @param rules    source rules
+     * @param previous previously compiled rules of the same file
+     * @return compiled rules
+     */
+    @NotNull
+    public static CompiledRules compile(@NotNull IgnoreRules rules, @Nullable CompiledRules previous) {
+        final Map<Pair<String, IgnoreBundle.Syntax>, GlobMatcher> reusable = ContainerUtil.newHashMap();
+        if (previous != null) {
+            for (int i = 0; i < previous.keys.size(); i++) {
+                if (previous.matchers.get(i) != null) {
+                    reusable.put(previous.keys.get(i), previous.matchers.get(i));
+                }
+            }
+        }
+
+        final List<Pair<String, IgnoreBundle.Syntax>> keys = ContainerUtil.newArrayList();
+        final List<GlobMatcher> matchers = ContainerUtil.newArrayList();
+        final List<Pair<GlobMatcher, Boolean>> valid = ContainerUtil.newArrayList();
+
+        rules.accept(new IgnoreRulesReader.Visitor() {
+            @Override
+            public void visitEntry(@NotNull String text, @NotNull String value, @NotNull IgnoreBundle.Syntax syntax,
+                                   boolean negated) {
+                final Pair<String, IgnoreBundle.Syntax> key = Pair.create(text, syntax);
+                GlobMatcher matcher = reusable.get(key);
+                if (matcher == null) {
+                    matcher = Glob.createMatcher(value, syntax);
+                }
+
+                keys.add(key);
+                matchers.add(matcher);
+                if (matcher != null) {
+                    valid.add(Pair.create(matcher, negated));
+                }
+            }
+        });
+
+        return new CompiledRules(rules, keys, matchers, new GlobRuleSet(valid, rules.hashCode()));
+    }
+
+    /**
+     * Returns matchers of the entries that differ between this and the given version of the file. Entries outside
+     * of the changed range keep their relative order, so only paths matched by the returned matchers can change
+     * their status. Invalid entries do not match anything, so they are skipped.
+     *
+     * @param other other version of the file
+     * @return matchers of the changed entries
+     */
+    @NotNull
+    public List<GlobMatcher> diff(@NotNull CompiledRules other) {
+        final int size = keys.size(), otherSize = other.keys.size();
+        int prefix = 0;
+        while (prefix < size && prefix < otherSize && keys.get(prefix).equals(other.keys.get(prefix))) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < size - prefix && suffix < otherSize - prefix
+                && keys.get(size - suffix - 1).equals(other.keys.get(otherSize - suffix - 1))) {
+            suffix++;
+        }
+
+        final List<GlobMatcher> changed = ContainerUtil.newArrayList();
+        for (int i = prefix; i < size - suffix; i++) {
+            ContainerUtil.addIfNotNull(matchers.get(i), changed);
+        }
+        for (int i = prefix; i < otherSize - suffix; i++) {
+            ContainerUtil.addIfNotNull(other.matchers.get(i), changed);
+        }
+        return changed;
+    }
+
+    /**
+     * Returns source rules.
+     *
+     * @return source rules
+     */
+    @NotNull
+    public IgnoreRules getSource() {
+        return source;
+    }
+
+    /**
+     * Returns rules joined into the single rule set.
+     *
+     * @return rule set
+     */
+    @NotNull
+    public GlobRuleSet getRuleSet() {
+        return ruleSet;
+    }
+}
@@ -0,0 +1,465 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 hsz Jakub Chrzanowski <jakub@hsz.mobi>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package mobi.hsz.idea.gitignore.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Immutable compressed bitmap of the non-negative ints, organized the same way as the Roaring bitmaps. Values are
+ * split into chunks by their high 16 bits. Each chunk is stored either as a sorted <code>char[]</code> array of the
+ * low bits, if it holds at most {@link #ARRAY_LIMIT} values, or as a <code>long[]</code> bitmap of 65536 bits.
+ * Set operations are performed chunk by chunk, with the word-level operations on the bitmaps.
+ *
+ * @author Jakub Chrzanowski <jakub@hsz.mobi>
+ * @since 1.3.3
+ */
+public class CompressedBitmap {
+    /** Empty bitmap. */
+    public static final CompressedBitmap EMPTY = new CompressedBitmap(new char[0], new Object[0]);
+
+    /** Maximum cardinality of the chunk stored as an array. */
+    private static final int ARRAY_LIMIT = 4096;
+
+    /** Amount of the words in the chunk stored as a bitmap. */
+    private static final int WORDS = 1024;
+
+    /** High 16 bits of the chunks, sorted. */
+    @NotNull
+    private final char[] keys;
+
+    /** Chunks - <code>char[]</code> arrays or <code>long[]</code> bitmaps, in the {@link #keys} order. */
+    @NotNull
+    private final Object[] chunks;
+
+    /**
+     * Builds a new instance of {@link CompressedBitmap}.
+     *
+     * @param keys   high bits of the chunks
+     * @param chunks chunks
+     */
+    private CompressedBitmap(@NotNull char[] keys, @NotNull Object[] chunks) {
+        this.keys = keys;
+        this.chunks = chunks;
+    }
+
+    /**
+     * Builds bitmap of the given values.
+     *
+     * @param values non-negative values, sorted in ascending order
+     * @return bitmap
+     */
+    @NotNull
+    public static CompressedBitmap of(@NotNull int[] values) {
+        final Builder builder = new Builder(values.length / ARRAY_LIMIT + 1);
+        int start = 0;
+        while (start < values.length) {
+            final int high = values[start] >>> 16;
+            int end = start;
+            while (end < values.length && values[end] >>> 16 == high) {
+                end++;
+            }
+
+            final int count = end - start;
+            final char[] array = new char[count];
+            int size = 0;
+            for (int i = start; i < end; i++) {
+                final char low = (char) values[i];
+                if (size == 0 || array[size - 1] != low) {
+                    array[size++] = low;
+                }
+            }
+            builder.add((char) high, compress(toBitmap(size == count ? array : Arrays.copyOf(array, size))));
+            start = end;
+        }
+        return builder.build();
+    }
+
+    /**
+     * Checks if bitmap contains the given value.
+     *
+     * @param value value to check
+     * @return value is contained
+     */
+    public boolean contains(int value) {
+        final int index = Arrays.binarySearch(keys, (char) (value >>> 16));
+        return index >= 0 && contains(chunks[index], (char) value);
+    }
+
+    /**
+     * Checks if bitmap is empty.
+     *
+     * @return is empty
+     */
+    public boolean isEmpty() {
+        return keys.length == 0;
+    }
+
+    /**
+     * Returns amount of the values in the bitmap.
+     *
+     * @return cardinality
+     */
+    public int getCardinality() {
+        int cardinality = 0;
+        for (Object chunk : chunks) {
+            cardinality += cardinality(chunk);
+        }
+        return cardinality;
+    }
+
+    /**
+     * Returns intersection with the given bitmap.
+     *
+     * @param other bitmap
+     * @return values contained in both bitmaps
+     */
+    @NotNull
+    public CompressedBitmap and(@NotNull CompressedBitmap other) {
+        final Builder builder = new Builder(Math.min(keys.length, other.keys.length));
+        int i = 0;
+        int j = 0;
+        while (i < keys.length && j < other.keys.length) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                builder.add(keys[i], and(chunks[i++], other.chunks[j++]));
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns union with the given bitmap.
+     *
+     * @param other bitmap
+     * @return values contained in any of the bitmaps
+     */
+    @NotNull
+    public CompressedBitmap or(@NotNull CompressedBitmap other) {
+        final Builder builder = new Builder(keys.length + other.keys.length);
+        int i = 0;
+        int j = 0;
+        while (i < keys.length || j < other.keys.length) {
+            if (j == other.keys.length || (i < keys.length && keys[i] < other.keys[j])) {
+                builder.add(keys[i], chunks[i++]);
+            } else if (i == keys.length || keys[i] > other.keys[j]) {
+                builder.add(other.keys[j], other.chunks[j++]);
+            } else {
+                builder.add(keys[i], or(chunks[i++], other.chunks[j++]));
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns difference with the given bitmap.
+     *
+     * @param other bitmap
+     * @return values not contained in the given bitmap
+     */
+    @NotNull
+    public CompressedBitmap andNot(@NotNull CompressedBitmap other) {
+        final Builder builder = new Builder(keys.length);
+        int j = 0;
+        for (int i = 0; i < keys.length; i++) {
+            while (j < other.keys.length && other.keys[j] < keys[i]) {
+                j++;
+            }
+            if (j < other.keys.length && other.keys[j] == keys[i]) {
+                builder.add(keys[i], andNot(chunks[i], other.chunks[j]));
+            } else {
+                builder.add(keys[i], chunks[i]);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Checks if all of the values are contained in the given bitmap.
+     *
+     * @param other bitmap
+     * @return is subset of the given bitmap
+     */
+    public boolean isSubsetOf(@NotNull CompressedBitmap other) {
+        if (keys.length > other.keys.length) {
+            return false;
+        }
+        int j = 0;
+        for (int i = 0; i < keys.length; i++) {
+            while (j < other.keys.length && other.keys[j] < keys[i]) {
+                j++;
+            }
+            if (j == other.keys.length || other.keys[j] != keys[i] || !isSubset(chunks[i], other.chunks[j])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if chunk contains the given low bits.
+     *
+     * @param chunk chunk
+     * @param low   low bits
+     * @return value is contained
+     */
+    private static boolean contains(@NotNull Object chunk, char low) {
+        if (chunk instanceof char[]) {
+            return Arrays.binarySearch((char[]) chunk, low) >= 0;
+        }
+        return (((long[]) chunk)[low >>> 6] & (1L << low)) != 0;
+    }
+
+    /**
+     * Returns amount of the values in the chunk.
+     *
+     * @param chunk chunk
+     * @return cardinality
+     */
+    private static int cardinality(@NotNull Object chunk) {
+        if (chunk instanceof char[]) {
+            return ((char[]) chunk).length;
+        }
+        int cardinality = 0;
+        for (long word : (long[]) chunk) {
+            cardinality += Long.bitCount(word);
+        }
+        return cardinality;
+    }
+
+    /**
+     * Intersects two chunks.
+     *
+     * @param first  chunk
+     * @param second chunk
+     * @return intersection or <code>null</code> if empty
+     */
+    @Nullable
+    private static Object and(@NotNull Object first, @NotNull Object second) {
+        if (first instanceof char[] || second instanceof char[]) {
+            final char[] array = (char[]) (first instanceof char[] ? first : second);
+            final Object other = array == first ? second : first;
+            final char[] result = new char[array.length];
+            int size = 0;
+            for (char low : array) {
+                if (contains(other, low)) {
+                    result[size++] = low;
+                }
+            }
+            return size == 0 ? null : Arrays.copyOf(result, size);
+        }
+
+        final long[] words = new long[WORDS];
+        for (int i = 0; i < WORDS; i++) {
+            words[i] = ((long[]) first)[i] & ((long[]) second)[i];
+        }
+        return compress(words);
+    }
+
+    /**
+     * Unites two chunks.
+     *
+     * @param first  chunk
+     * @param second chunk
+     * @return union
+     */
+    @Nullable
+    private static Object or(@NotNull Object first, @NotNull Object second) {
+        final long[] words = toBitmap(first).clone();
+        if (second instanceof char[]) {
+            for (char low : (char[]) second) {
+                words[low >>> 6] |= 1L << low;
+            }
+        } else {
+            for (int i = 0; i < WORDS; i++) {
+                words[i] |= ((long[]) second)[i];
+            }
+        }
+        return compress(words);
+    }
+
+    /**
+     * Subtracts second chunk from the first one.
+     *
+     * @param first  chunk
+     * @param second chunk
+     * @return difference or <code>null</code> if empty
+     */
+    @Nullable
+    private static Object andNot(@NotNull Object first, @NotNull Object second) {
+        if (first instanceof char[]) {
+            final char[] array = (char[]) first;
+            final char[] result = new char[array.length];
+            int size = 0;
+            for (char low : array) {
+                if (!contains(second, low)) {
+                    result[size++] = low;
+                }
+            }
+            return size == 0 ? null : size == array.length ? array : Arrays.copyOf(result, size);
+        }
+
+        final long[] words = ((long[]) first).clone();
+        if (second instanceof char[]) {
+            for (char low : (char[]) second) {
+                words[low >>> 6] &= ~(1L << low);
+            }
+        } else {
+            for (int i = 0; i < WORDS; i++) {
+                words[i] &= ~((long[]) second)[i];
+            }
+        }
+        return compress(words);
+    }
+
+    /**
+     * Checks if the first chunk is a subset of the second one.
+     *
+     * @param first  chunk
+     * @param second chunk
+     * @return is subset
+     */
+    private static boolean isSubset(@NotNull Object first, @NotNull Object second) {
+        if (first instanceof char[]) {
+            for (char low : (char[]) first) {
+                if (!contains(second, low)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (second instanceof char[]) {
+            // bitmap chunk holds more values than any array chunk
+            return false;
+        }
+        for (int i = 0; i < WORDS; i++) {
+            if ((((long[]) first)[i] & ~((long[]) second)[i]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Converts chunk to the bitmap.
+     *
+     * @param chunk chunk
+     * @return bitmap, chunk itself if it is a bitmap already
+     */
+    @NotNull
+    private static long[] toBitmap(@NotNull Object chunk) {
+        if (chunk instanceof long[]) {
+            return (long[]) chunk;
+        }
+        final long[] words = new long[WORDS];
+        for (char low : (char[]) chunk) {
+            words[low >>> 6] |= 1L << low;
+        }
+        return words;
+    }
+
+    /**
+     * Stores bitmap in the most compact form.
+     *
+     * @param words bitmap
+     * @return array if cardinality does not exceed {@link #ARRAY_LIMIT}, bitmap otherwise, <code>null</code> if empty
+     */
+    @Nullable
+    private static Object compress(@NotNull long[] words) {
+        final int cardinality = cardinality(words);
+        if (cardinality == 0) {
+            return null;
+        }
+        if (cardinality > ARRAY_LIMIT) {
+            return words;
+        }
+
+        final char[] array = new char[cardinality];
+        int size = 0;
+        for (int i = 0; i < WORDS; i++) {
+            long word = words[i];
+            while (word != 0) {
+                array[size++] = (char) (i * 64 + Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+        return array;
+    }
+
+    /** Collects chunks of the new bitmap in the ascending keys order. */
+    private static class Builder {
+        /** High bits of the chunks. */
+        private char[] keys;
+
+        /** Chunks. */
+        private Object[] chunks;
+
+        /** Amount of the collected chunks. */
+        private int size;
+
+        /**
+         * Builds a new instance of {@link Builder}.
+         *
+         * @param capacity expected amount of the chunks
+         */
+        private Builder(int capacity) {
+            keys = new char[capacity];
+            chunks = new Object[capacity];
+        }
+
+        /**
+         * Adds chunk, empty chunks are skipped.
+         *
+         * @param key   high bits
+         * @param chunk chunk or <code>null</code> if empty
+         */
+        private void add(char key, @Nullable Object chunk) {
+            if (chunk == null) {
+                return;
+            }
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, Math.max(4, size * 2));
+                chunks = Arrays.copyOf(chunks, keys.length);
+            }
+            keys[size] = key;
+            chunks[size++] = chunk;
+        }
+
+        /**
+         * Builds bitmap of the collected chunks.
+         *
+         * @return bitmap
+         */
+        @NotNull
+        private CompressedBitmap build() {
+            return size == 0 ? EMPTY : new CompressedBitmap(Arrays.copyOf(keys, size), Arrays.copyOf(chunks, size));
+        }
+    }
+}
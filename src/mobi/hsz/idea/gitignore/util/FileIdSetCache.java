@@ -0,0 +1,200 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 hsz Jakub Chrzanowski <jakub@hsz.mobi>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package mobi.hsz.idea.gitignore.util;
+
+import com.intellij.util.containers.ContainerUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Memory-bounded cache of the file sets keyed by the pattern. Each set is stored as a sorted array of the
+ * {@link com.intellij.openapi.vfs.VirtualFileWithId} file ids, so cached sets do not hold the file instances.
+ * When the estimated size of the cached sets exceeds the budget, least recently used sets are evicted.
+ *
+ * @author Jakub Chrzanowski <jakub@hsz.mobi>
+ * @since 1.3.3
+ */
+public class FileIdSetCache {
+    /** Estimated memory used by the single entry besides the key characters and the ids, in bytes. */
+    private static final int ENTRY_OVERHEAD = 64;
+
+    /** Cached sets in the access order - least recently used first. */
+    private final LinkedHashMap<String, int[]> map = new LinkedHashMap<String, int[]>(16, 0.75f, true);
+
+    /** Memory budget, in bytes. */
+    private long budget;
+
+    /** Estimated memory used by the cached sets, in bytes. */
+    private long memoryUsage;
+
+    /** Amount of the sets evicted because of the budget. */
+    private long evictions;
+
+    /**
+     * Builds a new instance of {@link FileIdSetCache}.
+     *
+     * @param budget memory budget, in bytes
+     */
+    public FileIdSetCache(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Returns cached set and marks it as recently used.
+     *
+     * @param key pattern key
+     * @return sorted file ids or <code>null</code> if not cached
+     */
+    @Nullable
+    public synchronized int[] get(@NotNull String key) {
+        return map.get(key);
+    }
+
+    /**
+     * Caches the set and evicts least recently used sets that do not fit into the budget. Set larger than the whole
+     * budget is not cached at all.
+     *
+     * @param key pattern key
+     * @param ids sorted file ids
+     * @return keys removed from the cache, including the given key if it was not cached
+     */
+    @NotNull
+    public synchronized List<String> put(@NotNull String key, @NotNull int[] ids) {
+        remove(key);
+        final long size = sizeOf(key, ids);
+        if (size > budget) {
+            evictions++;
+            return ContainerUtil.newArrayList(key);
+        }
+
+        map.put(key, ids);
+        memoryUsage += size;
+        return evict();
+    }
+
+    /**
+     * Removes cached set.
+     *
+     * @param key pattern key
+     * @return set was cached
+     */
+    public synchronized boolean remove(@NotNull String key) {
+        final int[] ids = map.remove(key);
+        if (ids == null) {
+            return false;
+        }
+        memoryUsage -= sizeOf(key, ids);
+        return true;
+    }
+
+    /**
+     * Sets memory budget and evicts least recently used sets that do not fit into it.
+     *
+     * @param budget memory budget, in bytes
+     * @return evicted keys
+     */
+    @NotNull
+    public synchronized List<String> setBudget(long budget) {
+        this.budget = budget;
+        return evict();
+    }
+
+    /**
+     * Returns memory budget.
+     *
+     * @return budget, in bytes
+     */
+    public synchronized long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Returns estimated memory used by the cached sets.
+     *
+     * @return memory usage, in bytes
+     */
+    public synchronized long getMemoryUsage() {
+        return memoryUsage;
+    }
+
+    /**
+     * Returns amount of the cached sets.
+     *
+     * @return sets count
+     */
+    public synchronized int size() {
+        return map.size();
+    }
+
+    /**
+     * Returns amount of the sets evicted because of the budget.
+     *
+     * @return evictions count
+     */
+    public synchronized long getEvictionsCount() {
+        return evictions;
+    }
+
+    /** Removes all of the cached sets. */
+    public synchronized void clear() {
+        map.clear();
+        memoryUsage = 0;
+    }
+
+    /**
+     * Evicts least recently used sets until the cache fits into the budget.
+     *
+     * @return evicted keys
+     */
+    @NotNull
+    private List<String> evict() {
+        final List<String> evicted = ContainerUtil.newArrayList();
+        final Iterator<Map.Entry<String, int[]>> iterator = map.entrySet().iterator();
+        while (memoryUsage > budget && iterator.hasNext()) {
+            final Map.Entry<String, int[]> entry = iterator.next();
+            memoryUsage -= sizeOf(entry.getKey(), entry.getValue());
+            evicted.add(entry.getKey());
+            iterator.remove();
+            evictions++;
+        }
+        return evicted;
+    }
+
+    /**
+     * Estimates memory used by the single entry.
+     *
+     * @param key pattern key
+     * @param ids file ids
+     * @return size, in bytes
+     */
+    private static long sizeOf(@NotNull String key, @NotNull int[] ids) {
+        return ENTRY_OVERHEAD + 2L * key.length() + 4L * ids.length;
+    }
+}
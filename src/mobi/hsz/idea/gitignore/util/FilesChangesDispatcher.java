@@ -0,0 +1,260 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 hsz Jakub Chrzanowski <jakub@hsz.mobi>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package mobi.hsz.idea.gitignore.util;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.fileTypes.FileTypeManager;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileCopyEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileCreateEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileDeleteEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileMoveEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent;
+import com.intellij.util.containers.ContainerUtil;
+import mobi.hsz.idea.gitignore.file.type.IgnoreFileType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Single bulk VFS subscriber shared by the plugin caches. Each batch of the VFS events is reduced in one pass into
+ * the {@link Changes} summary - the ignore files that were added or removed and the paths of the files that were
+ * created, deleted, moved or renamed - and passed once to every registered {@link Listener}.
+ *
+ * @author Jakub Chrzanowski <jakub@hsz.mobi>
+ * @since 1.3.3
+ */
+public class FilesChangesDispatcher implements BulkFileListener, Listenable<FilesChangesDispatcher.Listener> {
+    /** Registered listeners. */
+    private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+    /**
+     * Returns {@link FilesChangesDispatcher} service instance.
+     *
+     * @return {@link FilesChangesDispatcher} instance
+     */
+    public static FilesChangesDispatcher getInstance() {
+        return ServiceManager.getService(FilesChangesDispatcher.class);
+    }
+
+    /** Builds a new instance of {@link FilesChangesDispatcher} and subscribes it to the VFS changes. */
+    public FilesChangesDispatcher() {
+        ApplicationManager.getApplication().getMessageBus().connect().subscribe(VirtualFileManager.VFS_CHANGES, this);
+    }
+
+    /**
+     * Add the given listener. The listener will be executed in the containing instance's thread.
+     *
+     * @param listener listener to add
+     */
+    @Override
+    public void addListener(@NotNull Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Remove the given listener.
+     *
+     * @param listener listener to remove
+     */
+    @Override
+    public void removeListener(@NotNull Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Collects files that are going to be removed, moved or renamed, while they are still placed at their old
+     * location.
+     *
+     * @param events batch of the VFS events
+     */
+    @Override
+    public void before(@NotNull List<? extends VFileEvent> events) {
+        if (listeners.isEmpty()) {
+            return;
+        }
+
+        final Changes changes = new Changes();
+        for (VFileEvent event : events) {
+            if (event instanceof VFileDeleteEvent || event instanceof VFileMoveEvent) {
+                changes.add(event.getFile(), event.getFile() != null && isIgnoreFile(event.getFile().getName()));
+            } else if (isRename(event)) {
+                final Object oldName = ((VFilePropertyChangeEvent) event).getOldValue();
+                changes.add(event.getFile(), oldName instanceof String && isIgnoreFile((String) oldName));
+            }
+        }
+
+        if (!changes.isEmpty()) {
+            for (Listener listener : listeners) {
+                listener.beforeChange(changes);
+            }
+        }
+    }
+
+    /**
+     * Collects files that were created, copied, moved or renamed, at their new location.
+     *
+     * @param events batch of the VFS events
+     */
+    @Override
+    public void after(@NotNull List<? extends VFileEvent> events) {
+        if (listeners.isEmpty()) {
+            return;
+        }
+
+        final Changes changes = new Changes();
+        for (VFileEvent event : events) {
+            final VirtualFile file;
+            if (event instanceof VFileCreateEvent || event instanceof VFileMoveEvent || isRename(event)) {
+                file = event.getFile();
+            } else if (event instanceof VFileCopyEvent) {
+                file = ((VFileCopyEvent) event).findCreatedFile();
+            } else {
+                continue;
+            }
+            changes.add(file, file != null && file.getFileType() instanceof IgnoreFileType);
+        }
+
+        if (!changes.isEmpty()) {
+            for (Listener listener : listeners) {
+                listener.afterChange(changes);
+            }
+        }
+    }
+
+    /**
+     * Checks if event changes the file name.
+     *
+     * @param event VFS event
+     * @return event is a rename
+     */
+    private static boolean isRename(@NotNull VFileEvent event) {
+        return event instanceof VFilePropertyChangeEvent
+                && VirtualFile.PROP_NAME.equals(((VFilePropertyChangeEvent) event).getPropertyName());
+    }
+
+    /**
+     * Checks if file with the given name is an ignore file.
+     *
+     * @param name file name
+     * @return is ignore file
+     */
+    private static boolean isIgnoreFile(@NotNull String name) {
+        return FileTypeManager.getInstance().getFileTypeByFileName(name) instanceof IgnoreFileType;
+    }
+
+    /** Summary of the single VFS events batch. */
+    public static class Changes {
+        /** Affected files. */
+        private final List<VirtualFile> files = ContainerUtil.newArrayList();
+
+        /** Paths of the affected files. */
+        private final List<String> paths = ContainerUtil.newArrayList();
+
+        /** Affected ignore files. */
+        private final List<VirtualFile> ignoreFiles = ContainerUtil.newArrayList();
+
+        /**
+         * Adds affected file.
+         *
+         * @param file       affected file
+         * @param ignoreFile file is an ignore file
+         */
+        private void add(@Nullable VirtualFile file, boolean ignoreFile) {
+            if (file == null) {
+                return;
+            }
+            files.add(file);
+            paths.add(file.getPath());
+            if (ignoreFile) {
+                ignoreFiles.add(file);
+            }
+        }
+
+        /**
+         * Returns affected files - before the change: removed, moved or renamed files, after the change: created,
+         * copied, moved or renamed files.
+         *
+         * @return affected files
+         */
+        @NotNull
+        public List<VirtualFile> getFiles() {
+            return files;
+        }
+
+        /**
+         * Returns paths of the affected files, at their location before or after the change.
+         *
+         * @return affected paths
+         */
+        @NotNull
+        public List<String> getPaths() {
+            return paths;
+        }
+
+        /**
+         * Returns affected ignore files - before the change: ignore files that are going to be removed, moved or
+         * renamed, after the change: ignore files that were created, copied, moved or renamed.
+         *
+         * @return affected ignore files
+         */
+        @NotNull
+        public List<VirtualFile> getIgnoreFiles() {
+            return ignoreFiles;
+        }
+
+        /**
+         * Checks if batch does not affect any file.
+         *
+         * @return no files affected
+         */
+        public boolean isEmpty() {
+            return files.isEmpty();
+        }
+    }
+
+    /** Listener of the VFS changes batches. */
+    public interface Listener {
+        /**
+         * Called before the batch is applied. Affected files are still placed at their old location.
+         *
+         * @param changes batch summary
+         */
+        void beforeChange(@NotNull Changes changes);
+
+        /**
+         * Called after the batch is applied.
+         *
+         * @param changes batch summary
+         */
+        void afterChange(@NotNull Changes changes);
+    }
+}
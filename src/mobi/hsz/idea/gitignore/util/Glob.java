@@ -35,9 +35,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -48,8 +46,11 @@ import java.util.regex.PatternSyntaxException;
  * @since 0.5
  */
 public class Glob {
-    /** Cache map that holds processed regex statements to the glob rules. */
-    private static final HashMap<String, String> cache = ContainerUtil.newHashMap();
+    /** Maximum amount of the compiled patterns kept in the {@link #cache}. */
+    private static final int CACHE_CAPACITY = 1024;
+
+    /** Cache that holds compiled patterns of the rules. */
+    private static final PatternCache cache = new PatternCache(CACHE_CAPACITY);
 
     /** Private constructor to prevent creating {@link Glob} instance. */
     private Glob() {
@@ -75,15 +76,14 @@ public class Glob {
      * @return search result
      */
     public static List<VirtualFile> find(@NotNull final VirtualFile root, @NotNull IgnoreEntry entry, final boolean includeNested) {
-        Pattern pattern = createPattern(entry);
-        if (pattern == null) {
+        final GlobMatcher matcher = createMatcher(entry);
+        if (matcher == null) {
             return Collections.emptyList();
         }
 
         final List<VirtualFile> files = ContainerUtil.newArrayList();
-        final Matcher matcher = pattern.matcher("");
 
-        VirtualFileVisitor<Matcher> visitor = new VirtualFileVisitor<Matcher>(VirtualFileVisitor.NO_FOLLOW_SYMLINKS) {
+        VirtualFileVisitor<GlobMatcher> visitor = new VirtualFileVisitor<GlobMatcher>(VirtualFileVisitor.NO_FOLLOW_SYMLINKS) {
             @Override
             public boolean visitFile(@NotNull VirtualFile file) {
                 boolean matches = false;
@@ -93,7 +93,7 @@ public class Glob {
                     return false;
                 }
 
-                if (getCurrentValue() == null || MatcherUtil.match(getCurrentValue(), path)) {
+                if (getCurrentValue() == null || getCurrentValue().matches(path)) {
                     matches = true;
                     files.add(file);
                 }
@@ -158,12 +158,30 @@ public class Glob {
      */
     @Nullable
     public static Pattern createPattern(@NotNull String rule, @NotNull IgnoreBundle.Syntax syntax, boolean acceptChildren) {
+        Pattern pattern = cache.get(rule, syntax, acceptChildren);
+        if (pattern != null) {
+            return pattern;
+        }
+
         final String regex = syntax.equals(IgnoreBundle.Syntax.GLOB) ? createRegex(rule, acceptChildren) : rule;
         try {
-            return Pattern.compile(regex);
+            pattern = Pattern.compile(regex);
         } catch (PatternSyntaxException e) {
             return null;
         }
+
+        cache.put(rule, syntax, acceptChildren, pattern);
+        return pattern;
+    }
+
+    /**
+     * Returns cache of the compiled patterns with its hits, misses and evictions counters.
+     *
+     * @return patterns cache
+     */
+    @NotNull
+    public static PatternCache getCache() {
+        return cache;
     }
 
     /**
@@ -189,6 +207,66 @@ public class Glob {
         return createPattern(entry.getValue(), entry.getSyntax(), acceptChildren);
     }
 
+    /**
+     * Creates {@link GlobMatcher} using glob rule.
+     *
+     * @param rule   rule value
+     * @param syntax rule syntax
+     * @return matcher
+     */
+    @Nullable
+    public static GlobMatcher createMatcher(@NotNull String rule, @NotNull IgnoreBundle.Syntax syntax) {
+        return createMatcher(rule, syntax, false);
+    }
+
+    /**
+     * Creates {@link GlobMatcher} using glob rule. Glob rules are compiled into the automaton, regex syntax
+     * and unsupported glob constructs fall back to the regex {@link Pattern}.
+     *
+     * @param rule           rule value
+     * @param syntax         rule syntax
+     * @param acceptChildren Matches directory children
+     * @return matcher or <code>null</code> if rule is invalid
+     */
+    @Nullable
+    public static GlobMatcher createMatcher(@NotNull String rule, @NotNull IgnoreBundle.Syntax syntax, boolean acceptChildren) {
+        if (syntax.equals(IgnoreBundle.Syntax.GLOB)) {
+            GlobMatcher matcher = GlobMatcher.compile(rule, acceptChildren);
+            if (matcher != null) {
+                return matcher;
+            }
+        }
+        Pattern pattern = createPattern(rule, syntax, acceptChildren);
+        if (pattern == null) {
+            return null;
+        }
+        return syntax.equals(IgnoreBundle.Syntax.GLOB) ?
+                GlobMatcher.fromPattern(pattern, GlobMatcher.extractParts(rule)) : GlobMatcher.fromPattern(pattern);
+    }
+
+    /**
+     * Creates {@link GlobMatcher} using {@link IgnoreEntry}.
+     *
+     * @param entry {@link IgnoreEntry}
+     * @return matcher
+     */
+    @Nullable
+    public static GlobMatcher createMatcher(@NotNull IgnoreEntry entry) {
+        return createMatcher(entry, false);
+    }
+
+    /**
+     * Creates {@link GlobMatcher} using {@link IgnoreEntry}.
+     *
+     * @param entry          {@link IgnoreEntry}
+     * @param acceptChildren Matches directory children
+     * @return matcher
+     */
+    @Nullable
+    public static GlobMatcher createMatcher(@NotNull IgnoreEntry entry, boolean acceptChildren) {
+        return createMatcher(entry.getValue(), entry.getSyntax(), acceptChildren);
+    }
+
     /**
      * Creates regex {@link String} using glob rule.
      *
@@ -199,10 +277,6 @@ public class Glob {
     @NotNull
     public static String createRegex(@NotNull String glob, boolean acceptChildren) {
         glob = glob.trim();
-        String cached = cache.get(glob);
-        if (cached != null) {
-            return cached;
-        }
 
         StringBuilder sb = new StringBuilder("^");
         boolean escape = false, star = false, doubleStar = false, bracket = false;
@@ -339,8 +413,6 @@ public class Glob {
 
         sb.append('$');
 
-        cache.put(glob, sb.toString());
-
         return sb.toString();
     }
 }
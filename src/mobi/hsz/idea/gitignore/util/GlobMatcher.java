@@ -0,0 +1,951 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 hsz Jakub Chrzanowski <jakub@hsz.mobi>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package mobi.hsz.idea.gitignore.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Glob matching engine that compiles glob rules into path-segment aware automata.
+ * Rules are translated with the same semantics as {@link Glob#createRegex(String, boolean)}, but instead of running
+ * a backtracking regex, all automaton states are tracked at once in a single bit mask. Matching is linear in the
+ * path length and does not allocate.
+ * <p>
+ * Rules that cannot be expressed with the automaton (regexp syntax, complex brackets, too many states) fall back to
+ * the regex {@link Pattern}.
+ *
+ * @author Jakub Chrzanowski <jakub@hsz.mobi>
+ * @since 1.3.3
+ */
+public class GlobMatcher {
+    /** Maximum amount of states - one bit of the mask is reserved for the accepting state. */
+    private static final int MAX_STATES = 63;
+
+    /** State consumes the specified character. */
+    static final byte LITERAL = 0;
+
+    /** State consumes any character. */
+    static final byte ANY = 1;
+
+    /** State consumes any character except of the path separator. */
+    static final byte SEGMENT = 2;
+
+    /** State consumes a character matching the bracket expression. */
+    static final byte BRACKET = 3;
+
+    /**
+     * Fast-path type of the rule. Plain names, literal suffixes and anchored literal paths are checked with simple
+     * string comparison, just like git does, without running the automaton.
+     */
+    public enum Type {
+        /** Rule has to be matched with the automaton or regex, i.e. <code>foo/*&#47;bar</code>. */
+        WILDCARD,
+
+        /** Plain name matched with the last path segment, i.e. <code>node_modules</code>. */
+        NAME,
+
+        /** Literal suffix of the path, i.e. <code>*.class</code>. */
+        SUFFIX,
+
+        /** Anchored literal path, i.e. <code>/build</code>. */
+        PATH
+    }
+
+    /** Compiled automaton or <code>null</code> if the regex fallback is used. */
+    @Nullable
+    private final Automaton automaton;
+
+    /** Regex fallback for the rules not supported by the automaton. */
+    @Nullable
+    private final Pattern pattern;
+
+    /** Fast-path type of the rule. */
+    @NotNull
+    private final Type type;
+
+    /** Literal part of the fast-path rule. */
+    @NotNull
+    private final String literal;
+
+    /** Rule matches directory children. */
+    private final boolean acceptChildren;
+
+    /** Literal fragments that every matching path contains, in order of appearance. */
+    @NotNull
+    private final String[] parts;
+
+    /**
+     * Builds a new instance of {@link GlobMatcher} backed by the automaton.
+     *
+     * @param automaton      compiled automaton
+     * @param type           fast-path type
+     * @param literal        literal part of the fast-path rule
+     * @param acceptChildren Matches directory children
+     * @param parts          required literal fragments
+     */
+    private GlobMatcher(@Nullable Automaton automaton, @NotNull Type type, @NotNull String literal,
+                        boolean acceptChildren, @NotNull String[] parts) {
+        this.automaton = automaton;
+        this.pattern = null;
+        this.type = type;
+        this.literal = literal;
+        this.acceptChildren = acceptChildren;
+        this.parts = parts;
+    }
+
+    /**
+     * Builds a new instance of {@link GlobMatcher} backed by the regex {@link Pattern}.
+     *
+     * @param pattern regex pattern
+     * @param parts   required literal fragments
+     */
+    private GlobMatcher(@NotNull Pattern pattern, @NotNull String[] parts) {
+        this.automaton = null;
+        this.pattern = pattern;
+        this.type = Type.WILDCARD;
+        this.literal = "";
+        this.acceptChildren = false;
+        this.parts = parts;
+    }
+
+    /**
+     * Creates {@link GlobMatcher} for the given glob rule.
+     * Returns <code>null</code> if the rule cannot be compiled into the automaton.
+     *
+     * @param glob           rule
+     * @param acceptChildren Matches directory children
+     * @return matcher or <code>null</code>
+     */
+    @Nullable
+    public static GlobMatcher compile(@NotNull String glob, boolean acceptChildren) {
+        glob = glob.trim();
+        final Compiler compiler = new Compiler();
+        if (!compiler.parse(glob, acceptChildren)) {
+            return null;
+        }
+
+        final Type type = compiler.getType();
+        final Automaton automaton = compiler.size() <= MAX_STATES ? compiler.build() : null;
+        if (automaton == null && type == Type.WILDCARD) {
+            return null;
+        }
+        return new GlobMatcher(automaton, type, type == Type.WILDCARD ? "" : compiler.getLiteral(),
+                acceptChildren, extractParts(glob));
+    }
+
+    /**
+     * Creates {@link GlobMatcher} that delegates to the given regex {@link Pattern}.
+     *
+     * @param pattern regex pattern
+     * @return matcher
+     */
+    @NotNull
+    public static GlobMatcher fromPattern(@NotNull Pattern pattern) {
+        return fromPattern(pattern, new String[0]);
+    }
+
+    /**
+     * Creates {@link GlobMatcher} that delegates to the given regex {@link Pattern}. Regex runs only if the path
+     * contains all of the given literal fragments.
+     *
+     * @param pattern regex pattern
+     * @param parts   literal fragments required by the pattern, in order of appearance
+     * @return matcher
+     */
+    @NotNull
+    public static GlobMatcher fromPattern(@NotNull Pattern pattern, @NotNull String[] parts) {
+        return new GlobMatcher(pattern, parts);
+    }
+
+    /**
+     * Extracts literal fragments of the glob rule that are contained in every matching path, in order of appearance.
+     * Path separators, wildcards, bracket expressions, escaped characters and repetitions are skipped, so the
+     * fragments are safe to use for the prefiltering.
+     *
+     * @param glob rule
+     * @return required literal fragments
+     */
+    @NotNull
+    public static String[] extractParts(@NotNull String glob) {
+        glob = glob.trim();
+        final List<String> parts = new ArrayList<String>();
+        final StringBuilder part = new StringBuilder();
+
+        for (int i = 0, length = glob.length(); i <= length; i++) {
+            final char c = i < length ? glob.charAt(i) : '/';
+            switch (c) {
+                case '\\':
+                    i++;
+                    break;
+                case '[':
+                    i = glob.indexOf(']', i + 1);
+                    break;
+                case '{':
+                    if (part.length() > 0) {
+                        part.setLength(part.length() - 1);
+                    }
+                    i = glob.indexOf('}', i + 1);
+                    break;
+                case '/':
+                case '*':
+                case '?':
+                case ']':
+                case '}':
+                    break;
+                default:
+                    part.append(c);
+                    continue;
+            }
+
+            if (part.length() > 0) {
+                parts.add(part.toString());
+                part.setLength(0);
+            }
+            if (i < 0) {
+                break;
+            }
+        }
+
+        return parts.toArray(new String[parts.size()]);
+    }
+
+    /**
+     * Checks if the given relative path matches the rule.
+     *
+     * @param path to check
+     * @return path matches the rule
+     */
+    public boolean matches(@Nullable CharSequence path) {
+        if (path == null) {
+            return false;
+        }
+
+        switch (type) {
+            case NAME:
+                final int nameEnd = trimSlash(path);
+                final int nameStart = lastSlash(path, nameEnd) + 1;
+                return nameEnd - nameStart == literal.length() && regionEquals(path, nameStart, literal);
+            case SUFFIX:
+                final int suffixStart = trimSlash(path) - literal.length();
+                return suffixStart >= 0 && regionEquals(path, suffixStart, literal);
+            case PATH:
+                final int length = literal.length();
+                if (acceptChildren) {
+                    return path.length() >= length && regionEquals(path, 0, literal)
+                            && (path.length() == length || path.charAt(length) == '/');
+                }
+                return trimSlash(path) == length && regionEquals(path, 0, literal);
+        }
+
+        if (automaton != null) {
+            return automaton.matches(path);
+        }
+        assert pattern != null;
+        if (!MatcherUtil.matchAllParts(parts, path.toString())) {
+            return false;
+        }
+        try {
+            return pattern.matcher(path).matches();
+        } catch (StringIndexOutOfBoundsException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns fast-path type of the rule.
+     *
+     * @return rule type
+     */
+    @NotNull
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns literal part of the fast-path rule: name, suffix or path.
+     *
+     * @return literal
+     */
+    @NotNull
+    public String getLiteral() {
+        return literal;
+    }
+
+    /**
+     * Checks if rule matches directory children.
+     *
+     * @return rule matches children
+     */
+    public boolean isAcceptChildren() {
+        return acceptChildren;
+    }
+
+    /**
+     * Returns literal fragments that every matching path contains, in order of appearance.
+     *
+     * @return required literal fragments
+     */
+    @NotNull
+    public String[] getParts() {
+        return parts;
+    }
+
+    /**
+     * Returns compiled automaton.
+     *
+     * @return automaton or <code>null</code> if the regex fallback is used
+     */
+    @Nullable
+    Automaton getAutomaton() {
+        return automaton;
+    }
+
+    /**
+     * Checks if matcher uses the automaton instead of the regex fallback.
+     *
+     * @return automaton is used
+     */
+    public boolean isAutomaton() {
+        return automaton != null;
+    }
+
+    /**
+     * Returns the path length without the single trailing slash.
+     *
+     * @param path to check
+     * @return length of the path
+     */
+    static int trimSlash(@NotNull CharSequence path) {
+        final int length = path.length();
+        return length > 0 && path.charAt(length - 1) == '/' ? length - 1 : length;
+    }
+
+    /**
+     * Searches for the last slash before the given index.
+     *
+     * @param path to check
+     * @param end  end index, exclusive
+     * @return slash index or <code>-1</code>
+     */
+    static int lastSlash(@NotNull CharSequence path, int end) {
+        for (int i = end - 1; i >= 0; i--) {
+            if (path.charAt(i) == '/') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Checks if path contains the literal at the given offset.
+     *
+     * @param path    to check
+     * @param offset  offset in path
+     * @param literal expected content
+     * @return path region equals literal
+     */
+    static boolean regionEquals(@NotNull CharSequence path, int offset, @NotNull String literal) {
+        for (int i = 0, length = literal.length(); i < length; i++) {
+            if (path.charAt(offset + i) != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compiled nondeterministic automaton. Each bit of the mask represents a single state that consumes one character,
+     * the highest used bit represents the accepting state.
+     */
+    static class Automaton {
+        /** Masks of the {@link #LITERAL} states indexed by the ASCII character. */
+        private final long[] asciiMasks = new long[128];
+
+        /** {@link #LITERAL} states consuming non ASCII characters. */
+        private final long nonAsciiMask;
+
+        /** {@link #ANY} states. */
+        private final long anyMask;
+
+        /** {@link #SEGMENT} states. */
+        private final long segmentMask;
+
+        /** {@link #BRACKET} states. */
+        private final long bracketMask;
+
+        /** States kinds. */
+        final byte[] kinds;
+
+        /** Characters consumed by the {@link #LITERAL} states. */
+        final char[] chars;
+
+        /** Bracket expressions of the {@link #BRACKET} states. */
+        final Bracket[] brackets;
+
+        /** States reachable after consuming a character in the given state. */
+        final long[] follow;
+
+        /** States active before consuming the first character. */
+        final long start;
+
+        /** Accepting state. */
+        final long accept;
+
+        Automaton(@NotNull byte[] kinds, @NotNull char[] chars, @NotNull Bracket[] brackets,
+                  @NotNull long[] follow, long start, long accept) {
+            this.kinds = kinds;
+            this.chars = chars;
+            this.brackets = brackets;
+            this.follow = follow;
+            this.start = start;
+            this.accept = accept;
+
+            long nonAscii = 0, any = 0, segment = 0, bracket = 0;
+            for (int i = 0; i < kinds.length; i++) {
+                final long bit = 1L << i;
+                switch (kinds[i]) {
+                    case LITERAL:
+                        if (chars[i] < 128) {
+                            asciiMasks[chars[i]] |= bit;
+                        } else {
+                            nonAscii |= bit;
+                        }
+                        break;
+                    case ANY:
+                        any |= bit;
+                        break;
+                    case SEGMENT:
+                        segment |= bit;
+                        break;
+                    case BRACKET:
+                        bracket |= bit;
+                        break;
+                }
+            }
+            this.nonAsciiMask = nonAscii;
+            this.anyMask = any;
+            this.segmentMask = segment;
+            this.bracketMask = bracket;
+        }
+
+        /**
+         * Returns amount of states, excluding the accepting one.
+         *
+         * @return states count
+         */
+        int size() {
+            return kinds.length;
+        }
+
+        /**
+         * Runs automaton on the given path.
+         *
+         * @param path to check
+         * @return path is accepted
+         */
+        boolean matches(@NotNull CharSequence path) {
+            long current = start;
+            for (int i = 0, length = path.length(); i < length; i++) {
+                final char c = path.charAt(i);
+                long active = current & (anyMask | accepting(c, current));
+                if (c != '/') {
+                    active |= current & segmentMask;
+                }
+                if (active == 0) {
+                    return false;
+                }
+
+                long next = 0;
+                while (active != 0) {
+                    next |= follow[Long.numberOfTrailingZeros(active)];
+                    active &= active - 1;
+                }
+                current = next;
+            }
+            return (current & accept) != 0;
+        }
+
+        /**
+         * Returns {@link #LITERAL} and {@link #BRACKET} states from the current ones that consume given character.
+         *
+         * @param c       character
+         * @param current active states
+         * @return states mask
+         */
+        private long accepting(char c, long current) {
+            long result;
+            if (c < 128) {
+                result = asciiMasks[c];
+            } else {
+                result = 0;
+                long literals = current & nonAsciiMask;
+                while (literals != 0) {
+                    final int state = Long.numberOfTrailingZeros(literals);
+                    if (chars[state] == c) {
+                        result |= 1L << state;
+                    }
+                    literals &= literals - 1;
+                }
+            }
+
+            long candidates = current & bracketMask;
+            while (candidates != 0) {
+                final int state = Long.numberOfTrailingZeros(candidates);
+                if (brackets[state].matches(c)) {
+                    result |= 1L << state;
+                }
+                candidates &= candidates - 1;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Bracket expression - list of characters ranges, optionally negated.
+     */
+    static class Bracket {
+        /** Lower bounds of ranges. */
+        private final char[] from;
+
+        /** Upper bounds of ranges. */
+        private final char[] to;
+
+        /** Expression is negated. */
+        private final boolean negated;
+
+        Bracket(@NotNull char[] from, @NotNull char[] to, boolean negated) {
+            this.from = from;
+            this.to = to;
+            this.negated = negated;
+        }
+
+        /**
+         * Parses content of the bracket expression using regex rules.
+         *
+         * @param content expression without brackets
+         * @return bracket or <code>null</code> if expression is not supported
+         */
+        @Nullable
+        static Bracket parse(@NotNull String content) {
+            boolean negated = false;
+            int i = 0;
+            if (content.startsWith("^")) {
+                negated = true;
+                i++;
+            }
+            if (i >= content.length() || content.indexOf('\\') >= 0 || content.indexOf('[') >= 0
+                    || content.contains("&&")) {
+                return null;
+            }
+
+            final StringBuilder from = new StringBuilder();
+            final StringBuilder to = new StringBuilder();
+            while (i < content.length()) {
+                char c = content.charAt(i);
+                if (i + 2 < content.length() && content.charAt(i + 1) == '-') {
+                    char end = content.charAt(i + 2);
+                    if (end < c) {
+                        return null;
+                    }
+                    from.append(c);
+                    to.append(end);
+                    i += 3;
+                } else {
+                    from.append(c);
+                    to.append(c);
+                    i++;
+                }
+            }
+            return new Bracket(from.toString().toCharArray(), to.toString().toCharArray(), negated);
+        }
+
+        /**
+         * Checks if character matches the expression.
+         *
+         * @param c character
+         * @return character matches
+         */
+        boolean matches(char c) {
+            for (int i = 0; i < from.length; i++) {
+                if (c >= from[i] && c <= to[i]) {
+                    return !negated;
+                }
+            }
+            return negated;
+        }
+    }
+
+    /**
+     * Translates glob rule into the {@link Automaton}. Rule is split into the tokens, matching the constructs produced
+     * by {@link Glob#createRegex(String, boolean)}, which are joined into the position automaton.
+     */
+    static class Compiler {
+        /** Single character. */
+        private static final int SINGLE = 0;
+
+        /** Any amount of characters from the single state: <code>[^/]*</code> or <code>.*</code>. */
+        private static final int REPEAT = 1;
+
+        /** Any amount of directories: <code>(?:[^/]*&#47;)*</code>. */
+        private static final int DIRECTORIES = 2;
+
+        /** Optional slash: <code>/?</code>. */
+        private static final int OPTIONAL_SLASH = 3;
+
+        /** Optional children: <code>(?:/.*)?</code>. */
+        private static final int OPTIONAL_CHILDREN = 4;
+
+        private final List<Byte> kinds = new ArrayList<Byte>();
+        private final List<Character> chars = new ArrayList<Character>();
+        private final List<Bracket> brackets = new ArrayList<Bracket>();
+        private final List<int[]> tokens = new ArrayList<int[]>();
+
+        /**
+         * Parses the rule into the tokens list.
+         *
+         * @param glob           rule
+         * @param acceptChildren Matches directory children
+         * @return rule is supported
+         */
+        private boolean parse(@NotNull String glob, boolean acceptChildren) {
+            boolean escape = false, star = false, doubleStar = false;
+            int beginIndex = 0;
+
+            if (glob.startsWith("**")) {
+                token(DIRECTORIES);
+                beginIndex = 2;
+                doubleStar = true;
+            } else if (glob.startsWith("*/")) {
+                token(REPEAT, SEGMENT);
+                beginIndex = 1;
+                star = true;
+            } else if (glob.equals("*")) {
+                token(REPEAT, ANY);
+            } else if (glob.startsWith("*")) {
+                token(REPEAT, ANY);
+            } else if (glob.indexOf('/') < 0) {
+                token(DIRECTORIES);
+            } else if (glob.startsWith("/")) {
+                beginIndex = 1;
+            }
+
+            for (int i = beginIndex; i < glob.length(); i++) {
+                final char ch = glob.charAt(i);
+
+                if (doubleStar) {
+                    doubleStar = false;
+                    if (ch == '/') {
+                        token(DIRECTORIES);
+                        continue;
+                    }
+                    token(REPEAT, SEGMENT);
+                }
+
+                if (ch == '*') {
+                    if (escape) {
+                        literal(ch);
+                        escape = false;
+                        star = false;
+                    } else if (star) {
+                        if (tokens.isEmpty() || isLastSlash()) {
+                            doubleStar = true;
+                        } else {
+                            token(REPEAT, SEGMENT);
+                        }
+                        star = false;
+                    } else {
+                        star = true;
+                    }
+                    continue;
+                } else if (star) {
+                    token(REPEAT, SEGMENT);
+                    star = false;
+                }
+
+                if (escape) {
+                    literal(ch);
+                    escape = false;
+                    continue;
+                }
+
+                switch (ch) {
+                    case '\\':
+                        escape = true;
+                        break;
+                    case '?':
+                        token(SINGLE, ANY);
+                        break;
+                    case '[':
+                        final int end = glob.indexOf(']', i + 1);
+                        if (end < 0) {
+                            return false;
+                        }
+                        final Bracket bracket = Bracket.parse(glob.substring(i + 1, end));
+                        if (bracket == null) {
+                            return false;
+                        }
+                        token(SINGLE, BRACKET);
+                        brackets.set(brackets.size() - 1, bracket);
+                        i = end;
+                        break;
+                    case '{':
+                    case '}':
+                        return false;
+                    default:
+                        literal(ch);
+                }
+            }
+
+            if (star || doubleStar) {
+                if (isLastSlash()) {
+                    token(SINGLE, acceptChildren ? ANY : SEGMENT);
+                    token(REPEAT, acceptChildren ? ANY : SEGMENT);
+                } else {
+                    token(REPEAT, SEGMENT);
+                }
+            } else {
+                if (isLastSlash()) {
+                    removeLast();
+                }
+                token(acceptChildren ? OPTIONAL_CHILDREN : OPTIONAL_SLASH);
+            }
+
+            return true;
+        }
+
+        /**
+         * Returns amount of the parsed states.
+         *
+         * @return states count
+         */
+        int size() {
+            return kinds.size();
+        }
+
+        /**
+         * Detects fast-path type of the parsed rule:
+         * <ul>
+         * <li>{@link Type#NAME} - any amount of directories, literal name without slashes and optional slash</li>
+         * <li>{@link Type#SUFFIX} - any characters followed by literal and optional slash</li>
+         * <li>{@link Type#PATH} - literal followed by optional slash or children</li>
+         * </ul>
+         *
+         * @return rule type
+         */
+        @NotNull
+        Type getType() {
+            final int size = tokens.size();
+            if (size < 2 || tokens.get(size - 1)[0] == SINGLE || tokens.get(size - 1)[0] == REPEAT) {
+                return Type.WILDCARD;
+            }
+
+            int index = 0;
+            Type type = Type.PATH;
+            if (tokens.get(0)[0] == DIRECTORIES) {
+                type = Type.NAME;
+                while (tokens.get(index)[0] == DIRECTORIES) {
+                    index++;
+                }
+            } else if (tokens.get(0)[0] == REPEAT && kinds.get(tokens.get(0)[1]) == ANY) {
+                type = Type.SUFFIX;
+                while (tokens.get(index)[0] == REPEAT) {
+                    index++;
+                }
+            }
+
+            if (index == size - 1 || type != Type.PATH && tokens.get(size - 1)[0] != OPTIONAL_SLASH
+                    || chars.get(tokens.get(size - 2)[1]) == '/') {
+                return Type.WILDCARD;
+            }
+
+            for (int i = index; i < size - 1; i++) {
+                final int[] token = tokens.get(i);
+                if (token[0] != SINGLE || kinds.get(token[1]) != LITERAL || type == Type.NAME && chars.get(token[1]) == '/') {
+                    return Type.WILDCARD;
+                }
+            }
+            return type;
+        }
+
+        /**
+         * Returns literal characters of the parsed rule.
+         *
+         * @return literal
+         */
+        @NotNull
+        String getLiteral() {
+            final StringBuilder builder = new StringBuilder();
+            for (int[] token : tokens) {
+                if (token[0] == SINGLE && kinds.get(token[1]) == LITERAL) {
+                    builder.append(chars.get(token[1]));
+                }
+            }
+            return builder.toString();
+        }
+
+        /**
+         * Checks if the last token is a literal slash.
+         *
+         * @return last token is slash
+         */
+        private boolean isLastSlash() {
+            if (tokens.isEmpty()) {
+                return false;
+            }
+            final int[] last = tokens.get(tokens.size() - 1);
+            return last[0] == SINGLE && kinds.get(last[1]) == LITERAL && chars.get(last[1]) == '/';
+        }
+
+        /** Removes the last token with its state. */
+        private void removeLast() {
+            tokens.remove(tokens.size() - 1);
+            kinds.remove(kinds.size() - 1);
+            chars.remove(chars.size() - 1);
+            brackets.remove(brackets.size() - 1);
+        }
+
+        /**
+         * Adds {@link #SINGLE} literal token.
+         *
+         * @param c character
+         */
+        private void literal(char c) {
+            tokens.add(new int[]{SINGLE, state(LITERAL, c)});
+        }
+
+        /**
+         * Adds token with the single state of the given kind.
+         *
+         * @param type token type
+         * @param kind state kind
+         */
+        private void token(int type, byte kind) {
+            tokens.add(new int[]{type, state(kind, '\0')});
+        }
+
+        /**
+         * Adds composite token.
+         *
+         * @param type {@link #DIRECTORIES}, {@link #OPTIONAL_SLASH} or {@link #OPTIONAL_CHILDREN}
+         */
+        private void token(int type) {
+            switch (type) {
+                case DIRECTORIES:
+                    tokens.add(new int[]{type, state(SEGMENT, '\0'), state(LITERAL, '/')});
+                    break;
+                case OPTIONAL_SLASH:
+                    tokens.add(new int[]{type, state(LITERAL, '/')});
+                    break;
+                case OPTIONAL_CHILDREN:
+                    tokens.add(new int[]{type, state(LITERAL, '/'), state(ANY, '\0')});
+                    break;
+            }
+        }
+
+        /**
+         * Registers a new state.
+         *
+         * @param kind state kind
+         * @param c    consumed character for the {@link #LITERAL} state
+         * @return state index
+         */
+        private int state(byte kind, char c) {
+            kinds.add(kind);
+            chars.add(c);
+            brackets.add(null);
+            return kinds.size() - 1;
+        }
+
+        /**
+         * Joins tokens into the automaton. For every token the set of reachable states is computed - states of the
+         * next tokens up to the first one that cannot be skipped, or the accepting state.
+         *
+         * @return automaton
+         */
+        @NotNull
+        private Automaton build() {
+            final int size = kinds.size();
+            final long accept = 1L << size;
+            final long[] follow = new long[size];
+
+            long reach = accept;
+            for (int t = tokens.size() - 1; t >= 0; t--) {
+                final int[] token = tokens.get(t);
+                final long first, last;
+                final boolean nullable;
+
+                switch (token[0]) {
+                    case REPEAT:
+                        first = last = bit(token[1]);
+                        follow[token[1]] |= first;
+                        nullable = true;
+                        break;
+                    case DIRECTORIES:
+                        first = bit(token[1]) | bit(token[2]);
+                        last = bit(token[2]);
+                        follow[token[1]] |= first;
+                        follow[token[2]] |= first;
+                        nullable = true;
+                        break;
+                    case OPTIONAL_SLASH:
+                        first = last = bit(token[1]);
+                        nullable = true;
+                        break;
+                    case OPTIONAL_CHILDREN:
+                        first = bit(token[1]);
+                        last = bit(token[1]) | bit(token[2]);
+                        follow[token[1]] |= bit(token[2]);
+                        follow[token[2]] |= bit(token[2]);
+                        nullable = true;
+                        break;
+                    default:
+                        first = last = bit(token[1]);
+                        nullable = false;
+                }
+
+                for (long states = last; states != 0; states &= states - 1) {
+                    follow[Long.numberOfTrailingZeros(states)] |= reach;
+                }
+                reach = nullable ? first | reach : first;
+            }
+
+            final byte[] kindsArray = new byte[size];
+            final char[] charsArray = new char[size];
+            for (int i = 0; i < size; i++) {
+                kindsArray[i] = kinds.get(i);
+                charsArray[i] = chars.get(i);
+            }
+            return new Automaton(kindsArray, charsArray, brackets.toArray(new Bracket[size]), follow, reach, accept);
+        }
+
+        private static long bit(int state) {
+            return 1L << state;
+        }
+    }
+}
@@ -0,0 +1,590 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 hsz Jakub Chrzanowski <jakub@hsz.mobi>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package mobi.hsz.idea.gitignore.util;
+
+import com.intellij.openapi.util.Pair;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Combined matcher for all rules of the single ignore file.
+ * <p>
+ * Like git does, rules are sorted into fast-path buckets: plain names go to the hash table of basenames, literal
+ * suffixes to the reversed trie and anchored literal paths to the trie of prefixes. Automata of the remaining
+ * wildcard rules are joined into one automaton which is run once over the tested path. Rules using the regex fallback
+ * are checked at the end. Every bucket returns the index of the last matching rule, so the original rules order is
+ * kept and negation works as expected.
+ * <p>
+ * Before the automaton and regex rules are run, {@link PartsFilter} scans the path once for the literal fragments
+ * of all rules - rules which fragments do not occur in the path are skipped.
+ *
+ * @author Jakub Chrzanowski <jakub@hsz.mobi>
+ * @since 1.3.3
+ */
+public class GlobRuleSet {
+    /** Kind of the rule's accepting state - it does not consume any character. */
+    private static final byte ACCEPT = -1;
+
+    /** States kinds of all joined automata. */
+    private final byte[] kinds;
+
+    /** Characters consumed by the {@link GlobMatcher#LITERAL} states. */
+    private final char[] chars;
+
+    /** Bracket expressions of the {@link GlobMatcher#BRACKET} states. */
+    private final GlobMatcher.Bracket[] brackets;
+
+    /** Follow masks of the states, relative to the first state of the rule. */
+    private final long[] follow;
+
+    /** Index of the first state of the rule that state belongs to. */
+    private final int[] offsets;
+
+    /** Index of the rule that state belongs to. */
+    private final int[] rules;
+
+    /** States active before consuming the first character. */
+    private final long[] start;
+
+    /** Rules negation flags. */
+    private final boolean[] negated;
+
+    /** Rules that use the regex fallback. */
+    private final GlobMatcher[] fallback;
+
+    /** Indexes of the {@link #fallback} rules. */
+    private final int[] fallbackIndexes;
+
+    /** Amount of words used by the states masks. */
+    private final int words;
+
+    /** Indexes of the rules joined into the automaton. */
+    private final int[] automatonRules;
+
+    /** Index of the first state of each rule joined into the automaton. */
+    private final int[] automatonOffsets;
+
+    /** Indexes in {@link #automatonRules} of the rules that have literal fragments. */
+    private final int[] filteredRules;
+
+    /** Prefilter of the automaton and regex rules. */
+    private final PartsFilter filter;
+
+    /** {@link GlobMatcher.Type#NAME} rules. */
+    private final NameTable names = new NameTable();
+
+    /** {@link GlobMatcher.Type#SUFFIX} rules stored in the reversed order. */
+    private final Trie suffixes = new Trie();
+
+    /** {@link GlobMatcher.Type#PATH} rules. */
+    private final Trie paths = new Trie();
+
+    /** Hash of the source rules. */
+    private final int hash;
+
+    /**
+     * Builds a new instance of {@link GlobRuleSet}.
+     *
+     * @param matchers rules matchers with negation flags, in the order of appearance in the ignore file
+     */
+    public GlobRuleSet(@NotNull List<Pair<GlobMatcher, Boolean>> matchers) {
+        this(matchers, 0);
+    }
+
+    /**
+     * Builds a new instance of {@link GlobRuleSet}.
+     *
+     * @param matchers rules matchers with negation flags, in the order of appearance in the ignore file
+     * @param hash     hash of the source rules, stable between the IDE restarts
+     */
+    public GlobRuleSet(@NotNull List<Pair<GlobMatcher, Boolean>> matchers, int hash) {
+        this.hash = hash;
+        int size = 0, automatonSize = 0, fallbackSize = 0;
+        for (Pair<GlobMatcher, Boolean> pair : matchers) {
+            final GlobMatcher matcher = pair.getFirst();
+            final GlobMatcher.Automaton automaton = matcher.getAutomaton();
+            if (matcher.getType() != GlobMatcher.Type.WILDCARD) {
+                continue;
+            }
+            if (automaton != null) {
+                size += automaton.size() + 1;
+                automatonSize++;
+            } else {
+                fallbackSize++;
+            }
+        }
+
+        kinds = new byte[size];
+        chars = new char[size];
+        brackets = new GlobMatcher.Bracket[size];
+        follow = new long[size];
+        offsets = new int[size];
+        rules = new int[size];
+        words = (size >> 6) + 2;
+        start = new long[words];
+        negated = new boolean[matchers.size()];
+        fallback = new GlobMatcher[fallbackSize];
+        fallbackIndexes = new int[fallbackSize];
+        automatonRules = new int[automatonSize];
+        automatonOffsets = new int[automatonSize];
+
+        final List<String[]> parts = new ArrayList<String[]>(matchers.size());
+        final List<Integer> filtered = new ArrayList<Integer>();
+        int offset = 0, fallbackIndex = 0, automatonIndex = 0;
+        for (int rule = 0; rule < matchers.size(); rule++) {
+            final Pair<GlobMatcher, Boolean> pair = matchers.get(rule);
+            final GlobMatcher matcher = pair.getFirst();
+            final GlobMatcher.Automaton automaton = matcher.getAutomaton();
+            negated[rule] = pair.getSecond();
+            parts.add(matcher.getType() == GlobMatcher.Type.WILDCARD ? matcher.getParts() : new String[0]);
+
+            switch (matcher.getType()) {
+                case NAME:
+                    names.put(matcher.getLiteral(), rule);
+                    continue;
+                case SUFFIX:
+                    suffixes.add(matcher.getLiteral(), true, rule, false);
+                    continue;
+                case PATH:
+                    paths.add(matcher.getLiteral(), false, rule, matcher.isAcceptChildren());
+                    continue;
+            }
+
+            if (automaton == null) {
+                fallback[fallbackIndex] = matcher;
+                fallbackIndexes[fallbackIndex++] = rule;
+                continue;
+            }
+
+            final int count = automaton.size();
+            for (int state = 0; state <= count; state++) {
+                final int index = offset + state;
+                if (state < count) {
+                    kinds[index] = automaton.kinds[state];
+                    chars[index] = automaton.chars[state];
+                    brackets[index] = automaton.brackets[state];
+                    follow[index] = automaton.follow[state];
+                } else {
+                    kinds[index] = ACCEPT;
+                }
+                offsets[index] = offset;
+                rules[index] = rule;
+            }
+            or(start, automaton.start, offset);
+            if (matcher.getParts().length > 0) {
+                filtered.add(automatonIndex);
+            }
+            automatonRules[automatonIndex] = rule;
+            automatonOffsets[automatonIndex++] = offset;
+            offset += count + 1;
+        }
+
+        filter = new PartsFilter(parts);
+        filteredRules = new int[filtered.size()];
+        for (int i = 0; i < filteredRules.length; i++) {
+            filteredRules[i] = filtered.get(i);
+        }
+    }
+
+    /**
+     * Returns the index of the last rule that matches given path.
+     *
+     * @param path relative path to check
+     * @return rule index or <code>-1</code> if no rule matches
+     */
+    public int match(@NotNull CharSequence path) {
+        int result = Math.max(names.get(path), Math.max(suffixes.matchSuffix(path), paths.matchPath(path)));
+
+        long[] found = null;
+
+        if (automatonRules.length > 0 && automatonRules[automatonRules.length - 1] > result) {
+            found = filter.find(path);
+            result = Math.max(result, runAutomaton(path, result, found));
+        }
+
+        for (int i = fallback.length - 1; i >= 0 && fallbackIndexes[i] > result; i--) {
+            if (filter.isFiltered(fallbackIndexes[i])) {
+                if (found == null) {
+                    found = filter.find(path);
+                }
+                if (!filter.accepts(found, fallbackIndexes[i])) {
+                    continue;
+                }
+            }
+            if (fallback[i].matches(path)) {
+                return fallbackIndexes[i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Runs joined automaton on the given path. Rules placed before the already matched rule and rules rejected
+     * by the prefilter are skipped.
+     *
+     * @param path    relative path to check
+     * @param matched index of the rule already matched by the fast-path buckets
+     * @param found   fragments found in the path by the {@link #filter}
+     * @return rule index or <code>-1</code> if no rule matches
+     */
+    private int runAutomaton(@NotNull CharSequence path, int matched, @NotNull long[] found) {
+        long[] current = start.clone();
+        long[] next = new long[words];
+        boolean alive = true;
+
+        if (matched >= 0) {
+            int first = Arrays.binarySearch(automatonRules, matched + 1);
+            if (first < 0) {
+                first = -first - 1;
+            }
+            final int skipped = automatonOffsets[first];
+            for (int word = 0; word < skipped >> 6; word++) {
+                current[word] = 0;
+            }
+            current[skipped >> 6] &= -1L << (skipped & 63);
+        }
+
+        for (int index : filteredRules) {
+            if (automatonRules[index] > matched && !filter.accepts(found, automatonRules[index])) {
+                final int end = index + 1 < automatonOffsets.length ? automatonOffsets[index + 1] : kinds.length;
+                for (int state = automatonOffsets[index]; state < end; state++) {
+                    current[state >> 6] &= ~(1L << state);
+                }
+            }
+        }
+
+        for (int i = 0, length = path.length(); i < length && alive; i++) {
+            final char c = path.charAt(i);
+            alive = false;
+
+            for (int word = 0; word < words; word++) {
+                long bits = current[word];
+                while (bits != 0) {
+                    final int state = (word << 6) + Long.numberOfTrailingZeros(bits);
+                    if (accepts(state, c)) {
+                        or(next, follow[state], offsets[state]);
+                        alive = true;
+                    }
+                    bits &= bits - 1;
+                }
+            }
+
+            final long[] swap = current;
+            current = next;
+            next = swap;
+            for (int word = 0; word < words; word++) {
+                next[word] = 0;
+            }
+        }
+
+        return alive ? lastAccepted(current) : -1;
+    }
+
+    /**
+     * Checks if rule with the given index is negated.
+     *
+     * @param index rule index
+     * @return rule is negated
+     */
+    public boolean isNegated(int index) {
+        return negated[index];
+    }
+
+    /**
+     * Returns amount of the rules.
+     *
+     * @return rules count
+     */
+    public int size() {
+        return negated.length;
+    }
+
+    /**
+     * Returns hash of the source rules.
+     *
+     * @return rules hash
+     */
+    public int getHash() {
+        return hash;
+    }
+
+    /**
+     * Checks if state consumes given character.
+     *
+     * @param state state index
+     * @param c     character
+     * @return character is consumed
+     */
+    private boolean accepts(int state, char c) {
+        switch (kinds[state]) {
+            case GlobMatcher.LITERAL:
+                return chars[state] == c;
+            case GlobMatcher.ANY:
+                return true;
+            case GlobMatcher.SEGMENT:
+                return c != '/';
+            case GlobMatcher.BRACKET:
+                return brackets[state].matches(c);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Searches for the rule with the highest index which accepting state is active.
+     * Rules are laid out in order, so the highest active accepting state belongs to the last matching rule.
+     *
+     * @param current active states
+     * @return rule index or <code>-1</code>
+     */
+    private int lastAccepted(@NotNull long[] current) {
+        for (int word = words - 1; word >= 0; word--) {
+            long bits = current[word];
+            while (bits != 0) {
+                final int bit = 63 - Long.numberOfLeadingZeros(bits);
+                final int state = (word << 6) + bit;
+                if (kinds[state] == ACCEPT) {
+                    return rules[state];
+                }
+                bits &= ~(1L << bit);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Applies relative mask on the states set at the given offset.
+     *
+     * @param bits   states set
+     * @param mask   relative mask
+     * @param offset offset of the mask
+     */
+    private static void or(@NotNull long[] bits, long mask, int offset) {
+        final int word = offset >>> 6;
+        final int shift = offset & 63;
+        bits[word] |= mask << shift;
+        if (shift != 0) {
+            bits[word + 1] |= mask >>> (64 - shift);
+        }
+    }
+
+    /**
+     * Open addressing hash table of the plain names. Names are looked up directly in the path, without creating
+     * the basename substring.
+     */
+    private static class NameTable {
+        /** Names. */
+        private String[] keys = new String[16];
+
+        /** Index of the last rule with the name. */
+        private int[] values = new int[16];
+
+        /** Amount of stored names. */
+        private int size;
+
+        /**
+         * Stores the rule index for the given name.
+         *
+         * @param name plain name
+         * @param rule rule index
+         */
+        void put(@NotNull String name, int rule) {
+            if ((size + 1) * 2 > keys.length) {
+                final String[] oldKeys = keys;
+                final int[] oldValues = values;
+                keys = new String[oldKeys.length * 2];
+                values = new int[oldKeys.length * 2];
+                size = 0;
+                for (int i = 0; i < oldKeys.length; i++) {
+                    if (oldKeys[i] != null) {
+                        put(oldKeys[i], oldValues[i]);
+                    }
+                }
+            }
+
+            final int mask = keys.length - 1;
+            int slot = hash(name, 0, name.length()) & mask;
+            while (keys[slot] != null && !keys[slot].equals(name)) {
+                slot = (slot + 1) & mask;
+            }
+            if (keys[slot] == null) {
+                keys[slot] = name;
+                size++;
+            }
+            values[slot] = rule;
+        }
+
+        /**
+         * Returns the index of the last rule which name equals the last segment of the path.
+         *
+         * @param path relative path
+         * @return rule index or <code>-1</code>
+         */
+        int get(@NotNull CharSequence path) {
+            if (size == 0) {
+                return -1;
+            }
+
+            final int end = GlobMatcher.trimSlash(path);
+            final int begin = GlobMatcher.lastSlash(path, end) + 1;
+            final int mask = keys.length - 1;
+            int slot = hash(path, begin, end) & mask;
+            while (keys[slot] != null) {
+                if (keys[slot].length() == end - begin && GlobMatcher.regionEquals(path, begin, keys[slot])) {
+                    return values[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        /**
+         * Computes {@link String#hashCode()} compatible hash of the sequence region.
+         *
+         * @param sequence characters
+         * @param begin    start index, inclusive
+         * @param end      end index, exclusive
+         * @return hash
+         */
+        private static int hash(@NotNull CharSequence sequence, int begin, int end) {
+            int hash = 0;
+            for (int i = begin; i < end; i++) {
+                hash = 31 * hash + sequence.charAt(i);
+            }
+            return hash ^ (hash >>> 16);
+        }
+    }
+
+    /**
+     * Characters trie of the literal rules. Each node keeps the index of the last rule that ends in it.
+     */
+    private static class Trie {
+        /** Children characters. */
+        private char[] keys = new char[0];
+
+        /** Children nodes. */
+        private Trie[] children = new Trie[0];
+
+        /** Index of the last rule ending in this node, matching the path with optional trailing slash. */
+        private int rule = -1;
+
+        /** Index of the last rule ending in this node, matching also the directory children. */
+        private int childrenRule = -1;
+
+        /**
+         * Adds the literal to the trie.
+         *
+         * @param literal        rule literal
+         * @param reversed       store literal in the reversed order
+         * @param index          rule index
+         * @param acceptChildren rule matches directory children
+         */
+        void add(@NotNull String literal, boolean reversed, int index, boolean acceptChildren) {
+            Trie node = this;
+            final int length = literal.length();
+            for (int i = 0; i < length; i++) {
+                final char c = literal.charAt(reversed ? length - 1 - i : i);
+                Trie child = node.child(c);
+                if (child == null) {
+                    child = new Trie();
+                    node.keys = Arrays.copyOf(node.keys, node.keys.length + 1);
+                    node.children = Arrays.copyOf(node.children, node.children.length + 1);
+                    node.keys[node.keys.length - 1] = c;
+                    node.children[node.children.length - 1] = child;
+                }
+                node = child;
+            }
+            if (acceptChildren) {
+                node.childrenRule = index;
+            } else {
+                node.rule = index;
+            }
+        }
+
+        /**
+         * Returns the index of the last rule which literal is the suffix of the path.
+         *
+         * @param path relative path
+         * @return rule index or <code>-1</code>
+         */
+        int matchSuffix(@NotNull CharSequence path) {
+            int result = -1;
+            Trie node = this;
+            for (int i = GlobMatcher.trimSlash(path) - 1; i >= 0 && node != null; i--) {
+                node = node.child(path.charAt(i));
+                if (node != null) {
+                    result = Math.max(result, node.rule);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Returns the index of the last rule which literal equals the path or is the parent directory of the path.
+         *
+         * @param path relative path
+         * @return rule index or <code>-1</code>
+         */
+        int matchPath(@NotNull CharSequence path) {
+            int result = -1;
+            Trie node = this;
+            for (int i = 0, length = path.length(); node != null; i++) {
+                if (i == length) {
+                    return Math.max(result, Math.max(node.rule, node.childrenRule));
+                }
+
+                final char c = path.charAt(i);
+                if (c == '/' && node != this) {
+                    result = Math.max(result, node.childrenRule);
+                    if (i == length - 1) {
+                        result = Math.max(result, node.rule);
+                    }
+                }
+                node = node.child(c);
+            }
+            return result;
+        }
+
+        /**
+         * Returns child node for the given character.
+         *
+         * @param c character
+         * @return child node or <code>null</code>
+         */
+        @Nullable
+        private Trie child(char c) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -29,7 +29,6 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.List;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
@@ -39,31 +38,6 @@ import java.util.regex.Pattern;
  * @since 1.3.1
  */
 public class MatcherUtil {
-    /**
-     * Extracts alphanumeric parts from the regex pattern and checks if any of them is contained in the tested path.
-     * Looking for the parts speed ups the matching and prevents from running whole regex on the string.
-     *
-     * @param matcher to explode
-     * @param path to check
-     * @return path matches the pattern
-     */
-    public static boolean match(@Nullable Matcher matcher, @Nullable String path) {
-        if (matcher == null || path == null) {
-            return false;
-        }
-
-        String[] parts = getParts(matcher);
-        if (!matchAllParts(parts, path)) {
-            return false;
-        }
-
-        try {
-            return matcher.reset(path).matches();
-        } catch (StringIndexOutOfBoundsException e) {
-            return false;
-        }
-    }
-
     /**
      * Checks if given path contains all of the path parts.
      *
@@ -108,20 +82,6 @@ public class MatcherUtil {
         return false;
     }
 
-    /**
-     * Extracts alphanumeric parts from {@link Matcher} pattern.
-     *
-     * @param matcher to handle
-     * @return extracted parts
-     */
-    @NotNull
-    public static String[] getParts(@Nullable Matcher matcher) {
-        if (matcher == null) {
-            return new String[0];
-        }
-        return getParts(matcher.pattern());
-    }
-
     /**
      * Extracts alphanumeric parts from  {@link Pattern}.
      *
@@ -137,13 +97,13 @@ public class MatcherUtil {
         final List<String> parts = ContainerUtil.newArrayList();
         final String sPattern = pattern.toString();
 
-        String part = "";
+        final StringBuilder part = new StringBuilder();
         for (int i = 0; i < sPattern.length(); i++) {
             if (Character.isLetterOrDigit(sPattern.charAt(i))) {
-                part += sPattern.charAt(i);
-            } else if (!part.isEmpty()) {
-                parts.add(part);
-                part = "";
+                part.append(sPattern.charAt(i));
+            } else if (part.length() > 0) {
+                parts.add(part.toString());
+                part.setLength(0);
             }
         }
 
@@ -0,0 +1,231 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 hsz Jakub Chrzanowski <jakub@hsz.mobi>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package mobi.hsz.idea.gitignore.util;
+
+import gnu.trove.TIntIntProcedure;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Concurrent map of small values keyed by the {@link com.intellij.openapi.vfs.VirtualFileWithId} file ids.
+ * VFS ids are dense, so values are stored directly at the id position in pages allocated on demand. Each value takes
+ * the fixed amount of bits and several values are packed into a single int. Reads are lock-free, writes use
+ * compare-and-set.
+ *
+ * @author Jakub Chrzanowski <jakub@hsz.mobi>
+ * @since 1.3.3
+ */
+public class PackedStatusMap {
+    /** Amount of ids covered by the single page. */
+    private static final int PAGE_SIZE = 4096;
+
+    /** Amount of bits used by the single value. */
+    private final int bits;
+
+    /** Maximum value that can be stored. */
+    private final int maxValue;
+
+    /** Amount of values packed into the single int. */
+    private final int valuesPerInt;
+
+    /** Pages directory, replaced when it has to grow or the map is cleared. */
+    @NotNull
+    private volatile AtomicReferenceArray<AtomicIntegerArray> pages = new AtomicReferenceArray<AtomicIntegerArray>(16);
+
+    /**
+     * Builds a new instance of {@link PackedStatusMap}.
+     *
+     * @param bits amount of bits used by the single value: <code>1</code>, <code>2</code>, <code>4</code>,
+     *             <code>8</code> or <code>16</code>
+     */
+    public PackedStatusMap(int bits) {
+        if (bits <= 0 || bits > 16 || Integer.bitCount(bits) != 1) {
+            throw new IllegalArgumentException("Unsupported bits count: " + bits);
+        }
+        this.bits = bits;
+        this.maxValue = (1 << bits) - 1;
+        this.valuesPerInt = 32 / bits;
+    }
+
+    /**
+     * Returns value stored for the given id.
+     *
+     * @param id file id
+     * @return value or <code>0</code> if not set
+     */
+    public int get(int id) {
+        if (id <= 0) {
+            return 0;
+        }
+
+        final AtomicIntegerArray page = getPage(id, false);
+        if (page == null) {
+            return 0;
+        }
+        final int index = id % PAGE_SIZE;
+        return (page.get(index / valuesPerInt) >>> shift(index)) & maxValue;
+    }
+
+    /**
+     * Stores value for the given id.
+     *
+     * @param id    file id
+     * @param value value in range from <code>0</code> to {@link #getMaxValue()}, <code>0</code> removes stored value
+     */
+    public void put(int id, int value) {
+        if (id <= 0) {
+            return;
+        }
+        if (value < 0 || value > maxValue) {
+            throw new IllegalArgumentException("Value out of range: " + value);
+        }
+
+        final AtomicIntegerArray page = getPage(id, value != 0);
+        if (page == null) {
+            return;
+        }
+        final int index = id % PAGE_SIZE;
+        final int shift = shift(index);
+        final int slot = index / valuesPerInt;
+
+        int current;
+        int updated;
+        do {
+            current = page.get(slot);
+            updated = (current & ~(maxValue << shift)) | (value << shift);
+        } while (current != updated && !page.compareAndSet(slot, current, updated));
+    }
+
+    /**
+     * Returns maximum value that can be stored.
+     *
+     * @return maximum value
+     */
+    public int getMaxValue() {
+        return maxValue;
+    }
+
+    /**
+     * Executes procedure for each id with the non-zero value, in the ascending ids order.
+     *
+     * @param procedure procedure called with id and value, returning <code>false</code> stops the iteration
+     * @return <code>false</code> if iteration was stopped by the procedure
+     */
+    public boolean forEachEntry(@NotNull TIntIntProcedure procedure) {
+        final AtomicReferenceArray<AtomicIntegerArray> pages = this.pages;
+        for (int i = 0; i < pages.length(); i++) {
+            final AtomicIntegerArray page = pages.get(i);
+            if (page == null) {
+                continue;
+            }
+            for (int slot = 0; slot < page.length(); slot++) {
+                final int packed = page.get(slot);
+                if (packed == 0) {
+                    continue;
+                }
+                for (int j = 0; j < valuesPerInt; j++) {
+                    final int value = (packed >>> (j * bits)) & maxValue;
+                    if (value != 0 && !procedure.execute(i * PAGE_SIZE + slot * valuesPerInt + j, value)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /** Removes all stored values. */
+    public synchronized void clear() {
+        pages = new AtomicReferenceArray<AtomicIntegerArray>(16);
+    }
+
+    /**
+     * Returns amount of memory used by the allocated pages, in bytes.
+     *
+     * @return used memory
+     */
+    public long getMemoryUsage() {
+        final AtomicReferenceArray<AtomicIntegerArray> pages = this.pages;
+        long size = 0;
+        for (int i = 0; i < pages.length(); i++) {
+            if (pages.get(i) != null) {
+                size += PAGE_SIZE / valuesPerInt * 4;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns page that holds given id.
+     *
+     * @param id     file id
+     * @param create create page if it does not exist
+     * @return page or <code>null</code>
+     */
+    @Nullable
+    private AtomicIntegerArray getPage(int id, boolean create) {
+        final int index = id / PAGE_SIZE;
+        AtomicReferenceArray<AtomicIntegerArray> pages = this.pages;
+        if (index < pages.length()) {
+            final AtomicIntegerArray page = pages.get(index);
+            if (page != null || !create) {
+                return page;
+            }
+        } else if (!create) {
+            return null;
+        }
+
+        synchronized (this) {
+            pages = this.pages;
+            if (index >= pages.length()) {
+                final AtomicReferenceArray<AtomicIntegerArray> grown =
+                        new AtomicReferenceArray<AtomicIntegerArray>(Math.max(index + 1, pages.length() * 2));
+                for (int i = 0; i < pages.length(); i++) {
+                    grown.set(i, pages.get(i));
+                }
+                this.pages = pages = grown;
+            }
+            AtomicIntegerArray page = pages.get(index);
+            if (page == null) {
+                page = new AtomicIntegerArray(PAGE_SIZE / valuesPerInt);
+                pages.set(index, page);
+            }
+            return page;
+        }
+    }
+
+    /**
+     * Returns bit shift of the value inside the packed int.
+     *
+     * @param index id position in the page
+     * @return shift
+     */
+    private int shift(int index) {
+        return (index % valuesPerInt) * bits;
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 hsz Jakub Chrzanowski <jakub@hsz.mobi>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package mobi.hsz.idea.gitignore.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aho-Corasick prefilter over the literal fragments of the rules. Path is scanned once to find all of the fragments
+ * it contains - rule is a candidate for the matching only if the path contains all of its fragments.
+ *
+ * @author Jakub Chrzanowski <jakub@hsz.mobi>
+ * @since 1.3.3
+ */
+public class PartsFilter {
+    /** Distinct fragment ids required by each rule. */
+    @NotNull
+    private final int[][] required;
+
+    /** Characters of the transitions of each node. */
+    @NotNull
+    private final char[][] keys;
+
+    /** Target nodes of the transitions of each node. */
+    @NotNull
+    private final int[][] targets;
+
+    /** Failure link of each node. */
+    @NotNull
+    private final int[] fail;
+
+    /** Ids of the fragments ending in each node, including the ones reachable with failure links. */
+    @NotNull
+    private final int[][] outputs;
+
+    /** Amount of the distinct fragments. */
+    private final int fragments;
+
+    /**
+     * Builds a new instance of {@link PartsFilter}.
+     *
+     * @param parts literal fragments required by each rule, empty if the rule cannot be filtered
+     */
+    public PartsFilter(@NotNull List<String[]> parts) {
+        final Map<String, Integer> ids = new HashMap<String, Integer>();
+        final List<StringBuilder> nodeKeys = new ArrayList<StringBuilder>();
+        final List<List<Integer>> nodeTargets = new ArrayList<List<Integer>>();
+        final List<Integer> terminals = new ArrayList<Integer>();
+        nodeKeys.add(new StringBuilder());
+        nodeTargets.add(new ArrayList<Integer>());
+
+        required = new int[parts.size()][];
+        for (int rule = 0; rule < parts.size(); rule++) {
+            final List<Integer> ruleIds = new ArrayList<Integer>();
+            for (String part : parts.get(rule)) {
+                Integer id = ids.get(part);
+                if (id == null) {
+                    id = ids.size();
+                    ids.put(part, id);
+
+                    int node = 0;
+                    for (int i = 0; i < part.length(); i++) {
+                        final int index = nodeKeys.get(node).indexOf(String.valueOf(part.charAt(i)));
+                        if (index >= 0) {
+                            node = nodeTargets.get(node).get(index);
+                        } else {
+                            nodeKeys.get(node).append(part.charAt(i));
+                            nodeTargets.get(node).add(nodeKeys.size());
+                            node = nodeKeys.size();
+                            nodeKeys.add(new StringBuilder());
+                            nodeTargets.add(new ArrayList<Integer>());
+                        }
+                    }
+                    terminals.add(node);
+                }
+                if (!ruleIds.contains(id)) {
+                    ruleIds.add(id);
+                }
+            }
+
+            required[rule] = new int[ruleIds.size()];
+            for (int i = 0; i < ruleIds.size(); i++) {
+                required[rule][i] = ruleIds.get(i);
+            }
+        }
+
+        final int size = nodeKeys.size();
+        fragments = ids.size();
+        keys = new char[size][];
+        targets = new int[size][];
+        fail = new int[size];
+        outputs = new int[size][];
+
+        for (int node = 0; node < size; node++) {
+            keys[node] = nodeKeys.get(node).toString().toCharArray();
+            targets[node] = new int[keys[node].length];
+            for (int i = 0; i < targets[node].length; i++) {
+                targets[node][i] = nodeTargets.get(node).get(i);
+            }
+            outputs[node] = new int[0];
+        }
+        for (int id = 0; id < terminals.size(); id++) {
+            final int node = terminals.get(id);
+            outputs[node] = append(outputs[node], id);
+        }
+
+        // breadth first walk: failure link of the node is already known when its children are processed
+        final int[] queue = new int[size];
+        int head = 0, tail = 0;
+        for (int child : targets[0]) {
+            queue[tail++] = child;
+        }
+        while (head < tail) {
+            final int node = queue[head++];
+            for (int i = 0; i < keys[node].length; i++) {
+                final int child = targets[node][i];
+                int link = fail[node];
+                while (link > 0 && next(link, keys[node][i]) < 0) {
+                    link = fail[link];
+                }
+                final int target = next(link, keys[node][i]);
+                fail[child] = target >= 0 ? target : 0;
+                for (int id : outputs[fail[child]]) {
+                    outputs[child] = append(outputs[child], id);
+                }
+                queue[tail++] = child;
+            }
+        }
+    }
+
+    /**
+     * Scans the path and returns the set of the fragments it contains.
+     *
+     * @param path relative path
+     * @return bit set of the found fragment ids
+     */
+    @NotNull
+    public long[] find(@NotNull CharSequence path) {
+        final long[] found = new long[(fragments >> 6) + 1];
+        if (fragments == 0) {
+            return found;
+        }
+
+        int node = 0;
+        for (int i = 0, length = path.length(); i < length; i++) {
+            final char c = path.charAt(i);
+            int target = next(node, c);
+            while (target < 0 && node > 0) {
+                node = fail[node];
+                target = next(node, c);
+            }
+            node = target < 0 ? 0 : target;
+            for (int id : outputs[node]) {
+                found[id >> 6] |= 1L << id;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Checks if the path contains all fragments of the given rule.
+     *
+     * @param found bit set returned by {@link #find(CharSequence)}
+     * @param rule  rule index
+     * @return rule may match the path
+     */
+    public boolean accepts(@NotNull long[] found, int rule) {
+        for (int id : required[rule]) {
+            if ((found[id >> 6] & (1L << id)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if the given rule has any fragments to filter with.
+     *
+     * @param rule rule index
+     * @return rule is filtered
+     */
+    public boolean isFiltered(int rule) {
+        return required[rule].length > 0;
+    }
+
+    /**
+     * Returns target node of the transition or <code>-1</code>.
+     *
+     * @param node source node
+     * @param c    character
+     * @return target node
+     */
+    private int next(int node, char c) {
+        final char[] nodeKeys = keys[node];
+        for (int i = 0; i < nodeKeys.length; i++) {
+            if (nodeKeys[i] == c) {
+                return targets[node][i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Appends value to the array.
+     *
+     * @param array source array
+     * @param value value to append
+     * @return new array
+     */
+    @NotNull
+    private static int[] append(@NotNull int[] array, int value) {
+        final int[] result = Arrays.copyOf(array, array.length + 1);
+        result[array.length] = value;
+        return result;
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 hsz Jakub Chrzanowski <jakub@hsz.mobi>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package mobi.hsz.idea.gitignore.util;
+
+import com.intellij.util.containers.ContainerUtil;
+import gnu.trove.TLongObjectHashMap;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Inverted index from the literal parts to the cache keys built of them. Parts are grouped by their leading trigram,
+ * so the parts occurring in the given path are found with a single pass over the path trigrams instead of checking
+ * every key. Parts shorter than the trigram are checked one by one.
+ *
+ * @author Jakub Chrzanowski <jakub@hsz.mobi>
+ * @since 1.3.3
+ */
+public class PartsIndex {
+    /** Keys containing the part, keyed by the part. */
+    private final Map<String, Set<String>> keysByPart = ContainerUtil.newHashMap();
+
+    /** Parts of the indexed keys. */
+    private final Map<String, String[]> partsByKey = ContainerUtil.newHashMap();
+
+    /** Parts at least {@link TrigramIndex#N} characters long, keyed by their leading packed trigram. */
+    private final TLongObjectHashMap<List<String>> partsByTrigram = new TLongObjectHashMap<List<String>>();
+
+    /** Parts shorter than {@link TrigramIndex#N} characters. */
+    private final List<String> shortParts = ContainerUtil.newArrayList();
+
+    /**
+     * Adds key with its parts to the index.
+     *
+     * @param key   cache key
+     * @param parts literal parts of the key
+     */
+    public synchronized void add(@NotNull String key, @NotNull String[] parts) {
+        remove(key);
+        partsByKey.put(key, parts);
+        for (String part : parts) {
+            Set<String> keys = keysByPart.get(part);
+            if (keys == null) {
+                keys = ContainerUtil.newHashSet();
+                keysByPart.put(part, keys);
+                if (part.length() < TrigramIndex.N) {
+                    shortParts.add(part);
+                } else {
+                    final long trigram = TrigramIndex.trigram(part, 0);
+                    List<String> list = partsByTrigram.get(trigram);
+                    if (list == null) {
+                        list = ContainerUtil.newArrayList();
+                        partsByTrigram.put(trigram, list);
+                    }
+                    list.add(part);
+                }
+            }
+            keys.add(key);
+        }
+    }
+
+    /**
+     * Removes key from the index. Parts that are no longer used by any key are removed too.
+     *
+     * @param key cache key
+     */
+    public synchronized void remove(@NotNull String key) {
+        final String[] parts = partsByKey.remove(key);
+        if (parts == null) {
+            return;
+        }
+        for (String part : parts) {
+            final Set<String> keys = keysByPart.get(part);
+            if (keys == null || !keys.remove(key) || !keys.isEmpty()) {
+                continue;
+            }
+            keysByPart.remove(part);
+            if (part.length() < TrigramIndex.N) {
+                shortParts.remove(part);
+            } else {
+                final long trigram = TrigramIndex.trigram(part, 0);
+                final List<String> list = partsByTrigram.get(trigram);
+                if (list != null) {
+                    list.remove(part);
+                    if (list.isEmpty()) {
+                        partsByTrigram.remove(trigram);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds keys with any of the parts occurring in the given path.
+     *
+     * @param path path to check
+     * @return matching keys
+     */
+    @NotNull
+    public synchronized Set<String> findKeys(@NotNull String path) {
+        final Set<String> result = ContainerUtil.newHashSet();
+        for (int i = 0; i + TrigramIndex.N <= path.length(); i++) {
+            final List<String> parts = partsByTrigram.get(TrigramIndex.trigram(path, i));
+            if (parts == null) {
+                continue;
+            }
+            for (String part : parts) {
+                if (path.startsWith(part, i)) {
+                    result.addAll(keysByPart.get(part));
+                }
+            }
+        }
+        for (String part : shortParts) {
+            if (path.contains(part)) {
+                result.addAll(keysByPart.get(part));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns amount of the indexed keys.
+     *
+     * @return keys count
+     */
+    public synchronized int size() {
+        return partsByKey.size();
+    }
+
+    /** Removes all of the keys. */
+    public synchronized void clear() {
+        keysByPart.clear();
+        partsByKey.clear();
+        partsByTrigram.clear();
+        shortParts.clear();
+    }
+}
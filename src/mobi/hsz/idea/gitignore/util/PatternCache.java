@@ -0,0 +1,206 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 hsz Jakub Chrzanowski <jakub@hsz.mobi>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package mobi.hsz.idea.gitignore.util;
+
+import mobi.hsz.idea.gitignore.IgnoreBundle;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Thread-safe cache of the compiled {@link Pattern} instances, bounded with the least recently used eviction.
+ * Patterns are keyed with the rule value, its syntax and the <code>acceptChildren</code> flag.
+ *
+ * @author Jakub Chrzanowski <jakub@hsz.mobi>
+ * @since 1.3.3
+ */
+public class PatternCache {
+    /** Maximum amount of the cached patterns. */
+    private final int capacity;
+
+    /** Access ordered map of the cached patterns. */
+    private final LinkedHashMap<Key, Pattern> map;
+
+    /** Amount of the cache hits. */
+    private final AtomicLong hits = new AtomicLong();
+
+    /** Amount of the cache misses. */
+    private final AtomicLong misses = new AtomicLong();
+
+    /** Amount of the evicted patterns. */
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Builds a new instance of {@link PatternCache}.
+     *
+     * @param capacity maximum amount of the cached patterns
+     */
+    public PatternCache(final int capacity) {
+        this.capacity = capacity;
+        this.map = new LinkedHashMap<Key, Pattern>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Pattern> eldest) {
+                if (size() > PatternCache.this.capacity) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns cached {@link Pattern} for the given rule.
+     *
+     * @param rule           rule value
+     * @param syntax         rule syntax
+     * @param acceptChildren Matches directory children
+     * @return cached pattern or <code>null</code>
+     */
+    @Nullable
+    public Pattern get(@NotNull String rule, @NotNull IgnoreBundle.Syntax syntax, boolean acceptChildren) {
+        final Pattern pattern;
+        synchronized (map) {
+            pattern = map.get(new Key(rule, syntax, acceptChildren));
+        }
+        (pattern == null ? misses : hits).incrementAndGet();
+        return pattern;
+    }
+
+    /**
+     * Stores compiled {@link Pattern} for the given rule.
+     *
+     * @param rule           rule value
+     * @param syntax         rule syntax
+     * @param acceptChildren Matches directory children
+     * @param pattern        compiled pattern
+     */
+    public void put(@NotNull String rule, @NotNull IgnoreBundle.Syntax syntax, boolean acceptChildren,
+                    @NotNull Pattern pattern) {
+        synchronized (map) {
+            map.put(new Key(rule, syntax, acceptChildren), pattern);
+        }
+    }
+
+    /** Removes all cached patterns. Counters are not reset. */
+    public void clear() {
+        synchronized (map) {
+            map.clear();
+        }
+    }
+
+    /**
+     * Returns amount of the cached patterns.
+     *
+     * @return cache size
+     */
+    public int size() {
+        synchronized (map) {
+            return map.size();
+        }
+    }
+
+    /**
+     * Returns maximum amount of the cached patterns.
+     *
+     * @return cache capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns amount of the cache hits.
+     *
+     * @return hits count
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns amount of the cache misses.
+     *
+     * @return misses count
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns amount of the evicted patterns.
+     *
+     * @return evictions count
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /** Cache key built from the rule value, syntax and <code>acceptChildren</code> flag. */
+    private static final class Key {
+        /** Rule value. */
+        private final String rule;
+
+        /** Rule syntax. */
+        private final IgnoreBundle.Syntax syntax;
+
+        /** Matches directory children. */
+        private final boolean acceptChildren;
+
+        /**
+         * Builds a new instance of {@link Key}.
+         *
+         * @param rule           rule value
+         * @param syntax         rule syntax
+         * @param acceptChildren Matches directory children
+         */
+        Key(@NotNull String rule, @NotNull IgnoreBundle.Syntax syntax, boolean acceptChildren) {
+            this.rule = rule;
+            this.syntax = syntax;
+            this.acceptChildren = acceptChildren;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return acceptChildren == key.acceptChildren && syntax == key.syntax && rule.equals(key.rule);
+        }
+
+        @Override
+        public int hashCode() {
+            return (31 * rule.hashCode() + syntax.hashCode()) * 2 + (acceptChildren ? 1 : 0);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 hsz Jakub Chrzanowski <jakub@hsz.mobi>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package mobi.hsz.idea.gitignore.util;
+
+import com.intellij.ide.projectView.ProjectView;
+import com.intellij.ide.projectView.impl.AbstractProjectViewPane;
+import com.intellij.ide.util.treeView.AbstractTreeNode;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.newvfs.NewVirtualFile;
+import com.intellij.psi.PsiFileSystemItem;
+import com.intellij.util.containers.ContainerUtil;
+import com.intellij.util.ui.UIUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.TreePath;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.Set;
+
+/**
+ * Computes statuses of the files after the {@link CacheMap} rebuild in the priority order. Files opened in the editor
+ * and the children of the expanded project view nodes are computed and published first, so the visible UI is
+ * refreshed as soon as possible. Loaded siblings of the opened files are computed afterwards in the background,
+ * the rest of the project tree is computed lazily when requested.
+ *
+ * @author Jakub Chrzanowski <jakub@hsz.mobi>
+ * @since 1.3.3
+ */
+public class StatusScheduler {
+    /** Current project. */
+    @NotNull
+    private final Project project;
+
+    /** Cache used to compute the statuses. */
+    @NotNull
+    private final CacheMap cache;
+
+    /**
+     * Builds a new instance of {@link StatusScheduler}.
+     *
+     * @param project current project
+     * @param cache   statuses cache
+     */
+    public StatusScheduler(@NotNull Project project, @NotNull CacheMap cache) {
+        this.project = project;
+        this.cache = cache;
+    }
+
+    /**
+     * Computes statuses of the visible files, publishes them and continues with their siblings already loaded in the
+     * VFS, up to {@link CacheMap#MAX_CHECKED_FILES} files. Statuses of the remaining files are computed lazily when
+     * requested. Has to be called outside of the EDT and the read action. Process is aborted as soon as the indicator
+     * is canceled.
+     *
+     * @param indicator progress indicator
+     */
+    public void run(@NotNull ProgressIndicator indicator) {
+        final Set<VirtualFile> visible = getVisibleFiles();
+        indicator.checkCanceled();
+        compute(visible);
+        cache.flushNotifications();
+
+        final Set<VirtualFile> directories = ContainerUtil.newLinkedHashSet();
+        for (VirtualFile file : visible) {
+            final VirtualFile parent = file.getParent();
+            if (parent != null && !visible.contains(parent)) {
+                directories.add(parent);
+            }
+        }
+
+        int count = visible.size();
+        for (final VirtualFile directory : directories) {
+            if (count >= CacheMap.MAX_CHECKED_FILES) {
+                break;
+            }
+            indicator.checkCanceled();
+            if (!(directory instanceof NewVirtualFile)) {
+                continue;
+            }
+
+            final Collection<VirtualFile> children = ApplicationManager.getApplication().runReadAction(
+                    new Computable<Collection<VirtualFile>>() {
+                        @Override
+                        public Collection<VirtualFile> compute() {
+                            if (project.isDisposed() || !directory.isValid() || Utils.isVcsDirectory(directory)) {
+                                return ContainerUtil.emptyList();
+                            }
+                            return ((NewVirtualFile) directory).getCachedChildren();
+                        }
+                    }
+            );
+            compute(children);
+            count += children.size();
+        }
+        cache.flushNotifications();
+    }
+
+    /**
+     * Computes statuses of the given files in the read action.
+     *
+     * @param files to compute
+     */
+    private void compute(@NotNull final Collection<VirtualFile> files) {
+        if (files.isEmpty()) {
+            return;
+        }
+        ApplicationManager.getApplication().runReadAction(new Runnable() {
+            @Override
+            public void run() {
+                if (!project.isDisposed()) {
+                    cache.getIgnoredStatuses(files);
+                }
+            }
+        });
+    }
+
+    /**
+     * Collects files opened in the editor and files displayed in the project view - children of its expanded
+     * nodes. Swing components are accessed on the EDT.
+     *
+     * @return visible files
+     */
+    @NotNull
+    private Set<VirtualFile> getVisibleFiles() {
+        final Set<VirtualFile> files = ContainerUtil.newLinkedHashSet();
+        UIUtil.invokeAndWaitIfNeeded(new Runnable() {
+            @Override
+            public void run() {
+                if (project.isDisposed()) {
+                    return;
+                }
+
+                for (VirtualFile file : FileEditorManager.getInstance(project).getOpenFiles()) {
+                    if (file.isValid()) {
+                        files.add(file);
+                    }
+                }
+
+                final AbstractProjectViewPane pane = ProjectView.getInstance(project).getCurrentProjectViewPane();
+                final JTree tree = pane == null ? null : pane.getTree();
+                final Object root = tree == null ? null : tree.getModel().getRoot();
+                if (root == null) {
+                    return;
+                }
+
+                final Enumeration<TreePath> paths = tree.getExpandedDescendants(new TreePath(root));
+                while (paths != null && paths.hasMoreElements()) {
+                    final VirtualFile directory = getVirtualFile(paths.nextElement().getLastPathComponent());
+                    if (directory instanceof NewVirtualFile && directory.isValid() && directory.isDirectory()) {
+                        files.add(directory);
+                        files.addAll(((NewVirtualFile) directory).getCachedChildren());
+                    }
+                }
+            }
+        });
+        return files;
+    }
+
+    /**
+     * Returns {@link VirtualFile} represented by the project view node.
+     *
+     * @param node tree node
+     * @return file or <code>null</code> if node does not represent file system item
+     */
+    @Nullable
+    private static VirtualFile getVirtualFile(@Nullable Object node) {
+        if (node instanceof DefaultMutableTreeNode) {
+            final Object userObject = ((DefaultMutableTreeNode) node).getUserObject();
+            if (userObject instanceof AbstractTreeNode) {
+                final Object value = ((AbstractTreeNode) userObject).getValue();
+                if (value instanceof PsiFileSystemItem) {
+                    return ((PsiFileSystemItem) value).getVirtualFile();
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 hsz Jakub Chrzanowski <jakub@hsz.mobi>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package mobi.hsz.idea.gitignore.util;
+
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Persistent memory-mapped storage of the ints keyed by the {@link com.intellij.openapi.vfs.VirtualFileWithId} file
+ * ids. VFS ids are dense and stable between the IDE restarts, so values are stored directly at the id position.
+ * Storage is stamped with the VFS creation timestamp - stored values are dropped when the VFS is rebuilt and ids
+ * are assigned again.
+ *
+ * @author Jakub Chrzanowski <jakub@hsz.mobi>
+ * @since 1.3.3
+ */
+public class StatusStorage {
+    /** Logger instance. */
+    private static final Logger LOG = Logger.getInstance("#mobi.hsz.idea.gitignore.util.StatusStorage");
+
+    /** Storage file signature. */
+    private static final int MAGIC = 0x49475354;
+
+    /** Storage format version, has to be incremented with each change of the stored data format. */
+    private static final int VERSION = 2;
+
+    /** Size of the header: signature, version and VFS timestamp. */
+    private static final int HEADER_SIZE = 16;
+
+    /** Minimal amount of ids covered by the mapped region, mapped up front so it rarely has to grow. */
+    private static final int INITIAL_IDS = 1024 * 1024;
+
+    /** Storage file. */
+    @NotNull
+    private final RandomAccessFile file;
+
+    /** Mapped region of the storage file, replaced when it has to grow. */
+    @Nullable
+    private MappedByteBuffer buffer;
+
+    /**
+     * Guards the {@link #buffer}. Values are read and written with the read lock, the region is replaced and the
+     * previous one is unmapped with the write lock, so it is never accessed after it was unmapped.
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Opens storage stored in the given file. Storage is created if it does not exist or was created for another
+     * VFS instance.
+     *
+     * @param path      storage file
+     * @param timestamp VFS creation timestamp
+     * @throws IOException if storage cannot be opened
+     */
+    public StatusStorage(@NotNull File path, long timestamp) throws IOException {
+        final File parent = path.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create directory: " + parent);
+        }
+
+        file = new RandomAccessFile(path, "rw");
+        if (file.length() < HEADER_SIZE || file.readInt() != MAGIC || file.readInt() != VERSION
+                || file.readLong() != timestamp) {
+            file.setLength(0);
+            file.writeInt(MAGIC);
+            file.writeInt(VERSION);
+            file.writeLong(timestamp);
+        }
+        buffer = map(Math.max(Math.max(file.length() - HEADER_SIZE, 0) / 4, INITIAL_IDS));
+    }
+
+    /**
+     * Returns value stored for the given id.
+     *
+     * @param id file id
+     * @return value or <code>0</code> if not set
+     */
+    public int get(int id) {
+        if (id <= 0) {
+            return 0;
+        }
+
+        lock.readLock().lock();
+        try {
+            if (buffer == null || offset(id) + 4 > buffer.capacity()) {
+                return 0;
+            }
+            return buffer.getInt(offset(id));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stores value for the given id. Mapped region grows if needed.
+     *
+     * @param id    file id
+     * @param value value, <code>0</code> removes stored value
+     */
+    public void put(int id, int value) {
+        if (id <= 0) {
+            return;
+        }
+
+        lock.readLock().lock();
+        try {
+            if (buffer == null) {
+                return;
+            }
+            if (offset(id) + 4 <= buffer.capacity()) {
+                buffer.putInt(offset(id), value);
+                return;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        if (value != 0) {
+            grow(id, value);
+        }
+    }
+
+    /** Writes changes to the disk and closes the storage. */
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            if (buffer != null) {
+                buffer.force();
+                unmap(buffer);
+                buffer = null;
+            }
+            file.close();
+        } catch (IOException e) {
+            LOG.warn(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Grows mapped region twice, or more if needed, so it covers the given id, and stores the value. Previous region
+     * is unmapped right away.
+     *
+     * @param id    file id
+     * @param value value to store
+     */
+    private void grow(int id, int value) {
+        lock.writeLock().lock();
+        try {
+            if (buffer == null) {
+                return;
+            }
+            if (offset(id) + 4 > buffer.capacity()) {
+                final MappedByteBuffer previous = buffer;
+                buffer = map(Math.max((long) id + 1, previous.capacity() / 4 * 2L));
+                previous.force();
+                unmap(previous);
+            }
+            buffer.putInt(offset(id), value);
+        } catch (IOException e) {
+            LOG.warn(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Releases mapped region without waiting for the garbage collector, so the storage file is not kept locked.
+     * Region must not be accessed afterwards.
+     *
+     * @param buffer mapped region
+     */
+    private static void unmap(@NotNull MappedByteBuffer buffer) {
+        try {
+            final Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            final Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                final Method cleanMethod = cleaner.getClass().getMethod("clean");
+                cleanMethod.setAccessible(true);
+                cleanMethod.invoke(cleaner);
+            }
+        } catch (Exception e) {
+            // region is released by the garbage collector
+            LOG.debug(e);
+        }
+    }
+
+    /**
+     * Maps region of the storage file that covers the given amount of ids. File is extended if needed.
+     *
+     * @param ids amount of ids
+     * @return mapped region
+     * @throws IOException if region cannot be mapped
+     */
+    @NotNull
+    private MappedByteBuffer map(long ids) throws IOException {
+        return file.getChannel().map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE, ids * 4);
+    }
+
+    /**
+     * Returns position of the id value in the mapped region.
+     *
+     * @param id file id
+     * @return position
+     */
+    private static int offset(int id) {
+        return id * 4;
+    }
+}
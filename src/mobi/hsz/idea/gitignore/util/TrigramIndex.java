@@ -0,0 +1,184 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 hsz Jakub Chrzanowski <jakub@hsz.mobi>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package mobi.hsz.idea.gitignore.util;
+
+import com.intellij.util.containers.ContainerUtil;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TLongObjectHashMap;
+import gnu.trove.TObjectIntHashMap;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * In-memory trigram index of the file names. Each name gets an id and every trigram of the name points to the sorted
+ * list of ids of the names that contain it. Names containing the given part are found with the intersection of the
+ * lists of its trigrams, so the lookup cost depends on the amount of the matching names instead of all of the names.
+ * Parts shorter than the trigram are checked against all of the names.
+ * <p>
+ * Names are only added - removed names stay in the index, so the lookup returns their superset.
+ *
+ * @author Jakub Chrzanowski <jakub@hsz.mobi>
+ * @since 1.3.3
+ */
+public class TrigramIndex {
+    /** Length of the indexed n-gram. */
+    static final int N = 3;
+
+    /** Comparator of the posting lists by their size. */
+    private static final Comparator<TIntArrayList> SIZE_COMPARATOR = new Comparator<TIntArrayList>() {
+        @Override
+        public int compare(TIntArrayList list1, TIntArrayList list2) {
+            return list1.size() - list2.size();
+        }
+    };
+
+    /** Indexed names, position in the list is the name id. */
+    private final List<String> names = ContainerUtil.newArrayList();
+
+    /** Ids of the indexed names. */
+    private final TObjectIntHashMap<String> ids = new TObjectIntHashMap<String>();
+
+    /** Sorted lists of the names ids keyed by the packed trigram. */
+    private final TLongObjectHashMap<TIntArrayList> postings = new TLongObjectHashMap<TIntArrayList>();
+
+    /**
+     * Adds name to the index.
+     *
+     * @param name file name
+     * @return name was not indexed yet
+     */
+    public synchronized boolean add(@NotNull String name) {
+        if (ids.containsKey(name)) {
+            return false;
+        }
+
+        final int id = names.size();
+        names.add(name);
+        ids.put(name, id);
+
+        for (int i = 0; i + N <= name.length(); i++) {
+            final long trigram = trigram(name, i);
+            TIntArrayList list = postings.get(trigram);
+            if (list == null) {
+                list = new TIntArrayList(4);
+                postings.put(trigram, list);
+            }
+            // ids grow monotonically, so the list stays sorted - repeated trigram of the same name is added once
+            if (list.isEmpty() || list.get(list.size() - 1) != id) {
+                list.add(id);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns amount of the indexed names.
+     *
+     * @return names count
+     */
+    public synchronized int size() {
+        return names.size();
+    }
+
+    /**
+     * Finds names that contain any of the given parts.
+     *
+     * @param parts parts to look for
+     * @return matching names
+     */
+    @NotNull
+    public synchronized Set<String> findContaining(@NotNull String[] parts) {
+        final Set<String> result = ContainerUtil.newLinkedHashSet();
+        final List<String> shortParts = ContainerUtil.newArrayList();
+
+        for (String part : parts) {
+            if (part.length() < N) {
+                shortParts.add(part);
+            } else {
+                findContaining(part, result);
+            }
+        }
+
+        if (!shortParts.isEmpty()) {
+            final String[] array = shortParts.toArray(new String[shortParts.size()]);
+            for (String name : names) {
+                if (MatcherUtil.matchAnyPart(array, name)) {
+                    result.add(name);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Finds names that contain the given part using intersection of the posting lists of its trigrams.
+     *
+     * @param part   part to look for, at least {@link #N} characters long
+     * @param result matching names
+     */
+    private void findContaining(@NotNull String part, @NotNull Set<String> result) {
+        final TIntArrayList[] lists = new TIntArrayList[part.length() - N + 1];
+        for (int i = 0; i < lists.length; i++) {
+            lists[i] = postings.get(trigram(part, i));
+            if (lists[i] == null) {
+                return;
+            }
+        }
+        Arrays.sort(lists, SIZE_COMPARATOR);
+
+        final TIntArrayList smallest = lists[0];
+        candidates:
+        for (int i = 0; i < smallest.size(); i++) {
+            final int id = smallest.get(i);
+            for (int j = 1; j < lists.length; j++) {
+                if (lists[j].binarySearch(id) < 0) {
+                    continue candidates;
+                }
+            }
+
+            // trigrams may appear in the different order, so the candidate has to be verified
+            final String name = names.get(id);
+            if (name.contains(part)) {
+                result.add(name);
+            }
+        }
+    }
+
+    /**
+     * Packs trigram starting at the given position into a single long.
+     *
+     * @param text  text to read
+     * @param index start position
+     * @return packed trigram
+     */
+    static long trigram(@NotNull String text, int index) {
+        return ((long) text.charAt(index) << 32) | ((long) text.charAt(index + 1) << 16) | text.charAt(index + 2);
+    }
+}
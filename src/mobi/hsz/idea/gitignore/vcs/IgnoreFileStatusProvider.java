@@ -30,6 +30,7 @@ import com.intellij.openapi.vcs.FileStatus;
 import com.intellij.openapi.vcs.FileStatusFactory;
 import com.intellij.openapi.vcs.impl.FileStatusProvider;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.newvfs.NewVirtualFile;
 import com.intellij.ui.JBColor;
 import com.intellij.util.ThreeState;
 import mobi.hsz.idea.gitignore.IgnoreBundle;
@@ -58,6 +59,7 @@ public class IgnoreFileStatusProvider implements FileStatusProvider {
 
     /**
      * Returns the {@link #IGNORED} status if file is ignored or <code>null</code>.
+     * If the status is not computed yet, statuses of all of the already loaded siblings are prefetched at once.
      *
      * @param virtualFile file to check
      * @return {@link #IGNORED} status or <code>null</code>
@@ -65,6 +67,16 @@ public class IgnoreFileStatusProvider implements FileStatusProvider {
     @Nullable
     @Override
     public FileStatus getFileStatus(@NotNull VirtualFile virtualFile) {
+        if (!ignoreManager.isStatusCached(virtualFile)) {
+            final VirtualFile parent = virtualFile.getParent();
+            if (parent instanceof NewVirtualFile) {
+                final Boolean ignored = ignoreManager.getIgnoredStatuses(
+                        ((NewVirtualFile) parent).getCachedChildren()).get(virtualFile);
+                if (ignored != null) {
+                    return ignored ? IGNORED : null;
+                }
+            }
+        }
         return ignoreManager.isFileIgnored(virtualFile) ? IGNORED : null;
     }
 
@@ -0,0 +1,50 @@
+package mobi.hsz.idea.gitignore.parser;
+
+import mobi.hsz.idea.gitignore.IgnoreBundle;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+public class IgnoreRulesReaderTest {
+
+    @Test
+    public void testRead() throws Exception {
+        List<String> rules = read(new IgnoreRulesReader(IgnoreBundle.Syntax.GLOB, false),
+                "### header\n## section\n# comment\n\n  file.txt\r\n!dir/\r\t\\!escaped\n\\#hash\n!#comment\n! space\n!!double\nsyntax: regexp\n");
+
+        Assert.assertEquals(5, rules.size());
+        Assert.assertEquals("file.txt|file.txt|glob|false", rules.get(0));
+        Assert.assertEquals("!dir/|dir/|glob|true", rules.get(1));
+        Assert.assertEquals("\\!escaped|\\!escaped|glob|false", rules.get(2));
+        Assert.assertEquals("\\#hash|\\#hash|glob|false", rules.get(3));
+        Assert.assertEquals("syntax: regexp|syntax: regexp|glob|false", rules.get(4));
+    }
+
+    @Test
+    public void testSyntax() throws Exception {
+        List<String> rules = read(new IgnoreRulesReader(IgnoreBundle.Syntax.REGEXP, true),
+                "foo.*\nsyntax: glob\n*.txt\nsyntax: unknown\n!*.log\nsyntax:\n\nregexp\nbar$\n");
+
+        Assert.assertEquals(4, rules.size());
+        Assert.assertEquals("foo.*|foo.*|regexp|false", rules.get(0));
+        Assert.assertEquals("*.txt|*.txt|glob|false", rules.get(1));
+        Assert.assertEquals("!*.log|*.log|glob|true", rules.get(2));
+        Assert.assertEquals("bar$|bar$|regexp|false", rules.get(3));
+    }
+
+    private static List<String> read(@NotNull IgnoreRulesReader reader, @NotNull String text) throws Exception {
+        final List<String> rules = new ArrayList<String>();
+        reader.read(new StringReader(text), new IgnoreRulesReader.Visitor() {
+            @Override
+            public void visitEntry(@NotNull String text, @NotNull String value, @NotNull IgnoreBundle.Syntax syntax,
+                                   boolean negated) {
+                rules.add(text + "|" + value + "|" + syntax + "|" + negated);
+            }
+        });
+        return rules;
+    }
+}
@@ -0,0 +1,48 @@
+package mobi.hsz.idea.gitignore.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompressedBitmapTest {
+
+    @Test
+    public void testOf() throws Exception {
+        CompressedBitmap bitmap = CompressedBitmap.of(new int[]{1, 3, 3, 70000});
+        Assert.assertEquals(3, bitmap.getCardinality());
+        Assert.assertTrue(bitmap.contains(1));
+        Assert.assertTrue(bitmap.contains(70000));
+        Assert.assertFalse(bitmap.contains(2));
+        Assert.assertTrue(CompressedBitmap.of(new int[0]).isEmpty());
+    }
+
+    @Test
+    public void testOperations() throws Exception {
+        CompressedBitmap first = CompressedBitmap.of(range(0, 10000, 1));
+        CompressedBitmap second = CompressedBitmap.of(range(5000, 80000, 2));
+
+        CompressedBitmap and = first.and(second);
+        Assert.assertEquals(2500, and.getCardinality());
+        Assert.assertTrue(and.isSubsetOf(first));
+        Assert.assertTrue(and.isSubsetOf(second));
+        Assert.assertFalse(first.isSubsetOf(second));
+
+        CompressedBitmap or = first.or(second);
+        Assert.assertEquals(10000 + 37500 - 2500, or.getCardinality());
+        Assert.assertTrue(first.isSubsetOf(or));
+        Assert.assertTrue(second.isSubsetOf(or));
+
+        CompressedBitmap andNot = first.andNot(second);
+        Assert.assertEquals(7500, andNot.getCardinality());
+        Assert.assertTrue(andNot.and(second).isEmpty());
+        Assert.assertTrue(first.andNot(first).isEmpty());
+        Assert.assertTrue(CompressedBitmap.EMPTY.isSubsetOf(first));
+    }
+
+    private static int[] range(int from, int to, int step) {
+        int[] values = new int[(to - from + step - 1) / step];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = from + i * step;
+        }
+        return values;
+    }
+}
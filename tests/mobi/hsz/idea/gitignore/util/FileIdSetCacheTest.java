@@ -0,0 +1,45 @@
+package mobi.hsz.idea.gitignore.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class FileIdSetCacheTest {
+
+    @Test
+    public void testEviction() throws Exception {
+        FileIdSetCache cache = new FileIdSetCache(200);
+
+        Assert.assertEquals(Collections.<String>emptyList(), cache.put("a", new int[]{1, 2, 3}));
+        Assert.assertEquals(Collections.<String>emptyList(), cache.put("b", new int[]{4, 5}));
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(64 + 2 + 12 + 64 + 2 + 8, cache.getMemoryUsage());
+
+        Assert.assertArrayEquals(new int[]{1, 2, 3}, cache.get("a"));
+        Assert.assertEquals(Arrays.asList("b"), cache.put("c", new int[]{6}));
+        Assert.assertNull(cache.get("b"));
+        Assert.assertNotNull(cache.get("a"));
+        Assert.assertNotNull(cache.get("c"));
+        Assert.assertEquals(1, cache.getEvictionsCount());
+
+        Assert.assertEquals(Arrays.asList("d"), cache.put("d", new int[100]));
+        Assert.assertNull(cache.get("d"));
+        Assert.assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testBudget() throws Exception {
+        FileIdSetCache cache = new FileIdSetCache(1000);
+        cache.put("a", new int[]{1});
+        cache.put("b", new int[]{2});
+        cache.get("a");
+
+        Assert.assertEquals(Arrays.asList("b"), cache.setBudget(100));
+        Assert.assertEquals(1, cache.size());
+        Assert.assertTrue(cache.remove("a"));
+        Assert.assertFalse(cache.remove("a"));
+        Assert.assertEquals(0, cache.getMemoryUsage());
+    }
+}
@@ -0,0 +1,132 @@
+package mobi.hsz.idea.gitignore.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class GlobMatcherTest {
+
+    @Test
+    public void testCompile() throws Exception {
+        GlobMatcher matcher;
+
+        matcher = GlobMatcher.compile("file.txt", false);
+        Assert.assertTrue(matcher.isAutomaton());
+        Assert.assertTrue(matcher.matches("file.txt"));
+        Assert.assertTrue(matcher.matches("dir/file.txt"));
+        Assert.assertTrue(matcher.matches("dir/subdir/file.txt"));
+        Assert.assertFalse(matcher.matches("file1.txt"));
+        Assert.assertFalse(matcher.matches("otherfile.txt"));
+
+        matcher = GlobMatcher.compile("file*.txt", false);
+        Assert.assertTrue(matcher.matches("file.txt"));
+        Assert.assertTrue(matcher.matches("dir/file.txt"));
+        Assert.assertTrue(matcher.matches("dir/file-foo.txt"));
+        Assert.assertFalse(matcher.matches("file/foo.txt"));
+
+        matcher = GlobMatcher.compile("fil[eE].txt", false);
+        Assert.assertTrue(matcher.matches("file.txt"));
+        Assert.assertTrue(matcher.matches("filE.txt"));
+        Assert.assertFalse(matcher.matches("fild.txt"));
+
+        matcher = GlobMatcher.compile("fil[^a-e].txt", false);
+        Assert.assertTrue(matcher.matches("filf.txt"));
+        Assert.assertFalse(matcher.matches("file.txt"));
+
+        matcher = GlobMatcher.compile("dir/file.txt", false);
+        Assert.assertTrue(matcher.matches("dir/file.txt"));
+        Assert.assertFalse(matcher.matches("xdir/dir/file.txt"));
+        Assert.assertFalse(matcher.matches("xdir/file.txt"));
+
+        matcher = GlobMatcher.compile("/file.txt", false);
+        Assert.assertTrue(matcher.matches("file.txt"));
+        Assert.assertFalse(matcher.matches("dir/file.txt"));
+
+        matcher = GlobMatcher.compile("fi**le.txt", false);
+        Assert.assertTrue(matcher.matches("file.txt"));
+        Assert.assertTrue(matcher.matches("fi-foo-le.txt"));
+        Assert.assertFalse(matcher.matches("fi/le.txt"));
+        Assert.assertFalse(matcher.matches("fi/foo/le.txt"));
+
+        matcher = GlobMatcher.compile("**/dir/file.txt", false);
+        Assert.assertTrue(matcher.matches("foo/dir/file.txt"));
+        Assert.assertTrue(matcher.matches("dir/file.txt"));
+
+        matcher = GlobMatcher.compile("/dir/**/file.txt", false);
+        Assert.assertTrue(matcher.matches("dir/subdir/file.txt"));
+        Assert.assertTrue(matcher.matches("dir/subdir/foo/file.txt"));
+        Assert.assertTrue(matcher.matches("dir/file.txt"));
+
+        matcher = GlobMatcher.compile("dir/*", true);
+        Assert.assertTrue(matcher.matches("dir/file.txt"));
+        Assert.assertTrue(matcher.matches("dir/subdir/"));
+        Assert.assertFalse(matcher.matches("dir/"));
+
+        matcher = GlobMatcher.compile("dir/", true);
+        Assert.assertTrue(matcher.matches("dir"));
+        Assert.assertTrue(matcher.matches("dir/file.txt"));
+        Assert.assertFalse(matcher.matches("dirx/file.txt"));
+    }
+
+    @Test
+    public void testEscaping() throws Exception {
+        GlobMatcher matcher;
+
+        matcher = GlobMatcher.compile("\\*.txt", false);
+        Assert.assertTrue(matcher.matches("*.txt"));
+        Assert.assertFalse(matcher.matches("file.txt"));
+
+        matcher = GlobMatcher.compile("file\\?", false);
+        Assert.assertTrue(matcher.matches("file?"));
+        Assert.assertFalse(matcher.matches("file1"));
+    }
+
+    @Test
+    public void testUnsupported() throws Exception {
+        Assert.assertNull(GlobMatcher.compile("file[.txt", false));
+        Assert.assertNull(GlobMatcher.compile("file{1,2}.txt", false));
+        Assert.assertNull(GlobMatcher.compile("file[[:alpha:]].txt", false));
+    }
+
+    @Test
+    public void testLongPath() throws Exception {
+        GlobMatcher matcher = GlobMatcher.compile("**/a*b*c*d*e*f", false);
+        StringBuilder path = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            path.append("abcde/");
+        }
+        Assert.assertFalse(matcher.matches(path.append("abcde")));
+        Assert.assertTrue(matcher.matches(path.append("f")));
+    }
+
+    @Test
+    public void testType() throws Exception {
+        GlobMatcher matcher;
+
+        matcher = GlobMatcher.compile("file.txt", false);
+        Assert.assertEquals(GlobMatcher.Type.NAME, matcher.getType());
+        Assert.assertEquals("file.txt", matcher.getLiteral());
+
+        matcher = GlobMatcher.compile("*.txt", false);
+        Assert.assertEquals(GlobMatcher.Type.SUFFIX, matcher.getType());
+        Assert.assertEquals(".txt", matcher.getLiteral());
+
+        matcher = GlobMatcher.compile("/dir/file.txt", true);
+        Assert.assertEquals(GlobMatcher.Type.PATH, matcher.getType());
+        Assert.assertEquals("dir/file.txt", matcher.getLiteral());
+        Assert.assertTrue(matcher.matches("dir/file.txt/foo"));
+        Assert.assertFalse(matcher.matches("dir/file.txt.foo"));
+
+        matcher = GlobMatcher.compile("dir/*.txt", false);
+        Assert.assertEquals(GlobMatcher.Type.WILDCARD, matcher.getType());
+    }
+
+    @Test
+    public void testExtractParts() throws Exception {
+        Assert.assertArrayEquals(new String[]{"file.txt"}, GlobMatcher.extractParts("file.txt"));
+        Assert.assertArrayEquals(new String[]{"dir", "file", ".txt"}, GlobMatcher.extractParts("/dir/**/file*.txt"));
+        Assert.assertArrayEquals(new String[]{"fil", ".txt"}, GlobMatcher.extractParts("fil[eE].txt"));
+        Assert.assertArrayEquals(new String[]{"fil", "e"}, GlobMatcher.extractParts("fil\\?e"));
+        Assert.assertArrayEquals(new String[]{"fi", "e"}, GlobMatcher.extractParts("fil{1,2}e"));
+        Assert.assertArrayEquals(new String[0], GlobMatcher.extractParts("*/?"));
+    }
+}
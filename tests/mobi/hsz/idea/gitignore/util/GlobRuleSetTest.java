@@ -0,0 +1,74 @@
+package mobi.hsz.idea.gitignore.util;
+
+import com.intellij.openapi.util.Pair;
+import com.intellij.util.containers.ContainerUtil;
+import mobi.hsz.idea.gitignore.IgnoreBundle;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+public class GlobRuleSetTest {
+
+    @Test
+    public void testMatch() throws Exception {
+        final List<Pair<GlobMatcher, Boolean>> matchers = ContainerUtil.newArrayList();
+        matchers.add(Pair.create(Glob.createMatcher("*.class", IgnoreBundle.Syntax.GLOB), false));
+        matchers.add(Pair.create(Glob.createMatcher("build/", IgnoreBundle.Syntax.GLOB), false));
+        matchers.add(Pair.create(Glob.createMatcher("Main.class", IgnoreBundle.Syntax.GLOB), true));
+        matchers.add(Pair.create(Glob.createMatcher("^foo\\d+$", IgnoreBundle.Syntax.REGEXP), false));
+
+        final GlobRuleSet rules = new GlobRuleSet(matchers);
+        Assert.assertEquals(4, rules.size());
+
+        Assert.assertEquals(0, rules.match("Test.class"));
+        Assert.assertEquals(0, rules.match("dir/Test.class"));
+        Assert.assertEquals(1, rules.match("build"));
+        Assert.assertEquals(2, rules.match("dir/Main.class"));
+        Assert.assertEquals(3, rules.match("foo12"));
+        Assert.assertEquals(-1, rules.match("src/Main.java"));
+
+        Assert.assertFalse(rules.isNegated(0));
+        Assert.assertTrue(rules.isNegated(2));
+    }
+
+    @Test
+    public void testRulesOrder() throws Exception {
+        final List<Pair<GlobMatcher, Boolean>> matchers = ContainerUtil.newArrayList();
+        matchers.add(Pair.create(Glob.createMatcher("/vendor/", IgnoreBundle.Syntax.GLOB, true), false));
+        matchers.add(Pair.create(Glob.createMatcher("**/lib*", IgnoreBundle.Syntax.GLOB), false));
+        matchers.add(Pair.create(Glob.createMatcher("libfoo", IgnoreBundle.Syntax.GLOB), true));
+        matchers.add(Pair.create(Glob.createMatcher("*.jar", IgnoreBundle.Syntax.GLOB), false));
+
+        final GlobRuleSet rules = new GlobRuleSet(matchers);
+
+        Assert.assertEquals(0, rules.match("vendor"));
+        Assert.assertEquals(0, rules.match("vendor/pkg/file.txt"));
+        Assert.assertEquals(-1, rules.match("src/vendor/file.txt"));
+        Assert.assertEquals(1, rules.match("vendor/libbar"));
+        Assert.assertEquals(2, rules.match("vendor/libfoo"));
+        Assert.assertEquals(2, rules.match("src/libfoo/"));
+        Assert.assertEquals(3, rules.match("libfoo.jar"));
+    }
+
+    @Test
+    public void testPartsFilter() throws Exception {
+        final List<String[]> parts = ContainerUtil.newArrayList();
+        parts.add(new String[]{"src", "Test"});
+        parts.add(new String[0]);
+        parts.add(new String[]{"he", "she", "his", "hers"});
+        final PartsFilter filter = new PartsFilter(parts);
+
+        Assert.assertTrue(filter.isFiltered(0));
+        Assert.assertFalse(filter.isFiltered(1));
+
+        long[] found = filter.find("src/main/Test.java");
+        Assert.assertTrue(filter.accepts(found, 0));
+        Assert.assertTrue(filter.accepts(found, 1));
+        Assert.assertFalse(filter.accepts(found, 2));
+
+        found = filter.find("ushers/this");
+        Assert.assertFalse(filter.accepts(found, 0));
+        Assert.assertTrue(filter.accepts(found, 2));
+    }
+}
@@ -58,4 +58,26 @@ public class GlobTest {
         Assert.assertFalse(pattern.matcher("dir/").matches());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testPatternCache() throws Exception {
+        final PatternCache cache = new PatternCache(2);
+        final Pattern pattern = Glob.createPattern("dir/", IgnoreBundle.Syntax.GLOB);
+        final Pattern children = Glob.createPattern("dir/", IgnoreBundle.Syntax.GLOB, true);
+        Assert.assertNotSame(pattern, children);
+        Assert.assertSame(children, Glob.createPattern("dir/", IgnoreBundle.Syntax.GLOB, true));
+        Assert.assertFalse(pattern.matcher("dir/file.txt").matches());
+        Assert.assertTrue(children.matcher("dir/file.txt").matches());
+
+        Assert.assertNull(cache.get("dir/", IgnoreBundle.Syntax.GLOB, false));
+        cache.put("dir/", IgnoreBundle.Syntax.GLOB, false, pattern);
+        cache.put("dir/", IgnoreBundle.Syntax.GLOB, true, children);
+        Assert.assertSame(pattern, cache.get("dir/", IgnoreBundle.Syntax.GLOB, false));
+        cache.put("dir/", IgnoreBundle.Syntax.REGEXP, false, pattern);
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertNull(cache.get("dir/", IgnoreBundle.Syntax.GLOB, true));
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(2, cache.getMisses());
+        Assert.assertEquals(1, cache.getEvictions());
+    }
+}
@@ -0,0 +1,41 @@
+package mobi.hsz.idea.gitignore.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+public class PartsIndexTest {
+
+    @Test
+    public void testFindKeys() throws Exception {
+        PartsIndex index = new PartsIndex();
+        index.add("file$txt", new String[]{"file", "txt"});
+        index.add("dir$q", new String[]{"dir", "q"});
+        index.add("java", new String[]{"java"});
+        Assert.assertEquals(3, index.size());
+
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("file$txt")), index.findKeys("/project/file.txt"));
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("file$txt", "java")), index.findKeys("/src/file.java"));
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("dir$q")), index.findKeys("/q/b"));
+        Assert.assertEquals(Collections.<String>emptySet(), index.findKeys("/fil/ja"));
+    }
+
+    @Test
+    public void testRemove() throws Exception {
+        PartsIndex index = new PartsIndex();
+        index.add("file$txt", new String[]{"file", "txt"});
+        index.add("txt", new String[]{"txt"});
+
+        index.remove("file$txt");
+        Assert.assertEquals(1, index.size());
+        Assert.assertEquals(Collections.<String>emptySet(), index.findKeys("/file.java"));
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("txt")), index.findKeys("/file.txt"));
+
+        index.clear();
+        Assert.assertEquals(0, index.size());
+        Assert.assertEquals(Collections.<String>emptySet(), index.findKeys("/file.txt"));
+    }
+}
@@ -0,0 +1,46 @@
+package mobi.hsz.idea.gitignore.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+public class TrigramIndexTest {
+
+    @Test
+    public void testFindContaining() throws Exception {
+        TrigramIndex index = new TrigramIndex();
+        Assert.assertTrue(index.add("file.txt"));
+        Assert.assertTrue(index.add("other.txt"));
+        Assert.assertTrue(index.add("elif.java"));
+        Assert.assertTrue(index.add("aaaa"));
+        Assert.assertFalse(index.add("file.txt"));
+        Assert.assertEquals(4, index.size());
+
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("file.txt")),
+                index.findContaining(new String[]{"file"}));
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("file.txt", "other.txt")),
+                index.findContaining(new String[]{"txt"}));
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("file.txt", "elif.java")),
+                index.findContaining(new String[]{"file", "java"}));
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("aaaa")),
+                index.findContaining(new String[]{"aaa"}));
+        Assert.assertEquals(Collections.<String>emptySet(), index.findContaining(new String[]{"fiel"}));
+        Assert.assertEquals(Collections.<String>emptySet(), index.findContaining(new String[]{"filex"}));
+    }
+
+    @Test
+    public void testShortParts() throws Exception {
+        TrigramIndex index = new TrigramIndex();
+        index.add("a.c");
+        index.add("b.d");
+        index.add("file.txt");
+
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("a.c", "b.d")),
+                index.findContaining(new String[]{"a", "d"}));
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("b.d", "file.txt")),
+                index.findContaining(new String[]{"b", "txt"}));
+    }
+}